@@ -55,6 +55,8 @@ function registerCommands() {
   RS.registerCommand(module, "saved-connection", Packages.com.google.refine.extension.database.cmd.SavedConnectionCommand());
   RS.registerCommand(module, "execute-query", Packages.com.google.refine.extension.database.cmd.ExecuteQueryCommand());
   RS.registerCommand(module, "test-query", Packages.com.google.refine.extension.database.cmd.TestQueryCommand());
+  RS.registerCommand(module, "circuit-breakers", Packages.com.google.refine.extension.database.cmd.CircuitBreakerCommand());
+  RS.registerCommand(module, "active-queries", Packages.com.google.refine.extension.database.cmd.ActiveQueriesCommand());
   logger.info("Database Extension Command Registeration done!!");
 }
 
@@ -94,6 +94,12 @@ DatabaseExtension.handleConnectClicked = function(connectionName) {
                      databaseConfig.databasePassword = savedConfig.databasePassword;
                      databaseConfig.initialDatabase = savedConfig.databaseName;
                      databaseConfig.initialSchema = savedConfig.databaseSchema;
+                     databaseConfig.connectionProperties = savedConfig.connectionProperties;
+                     databaseConfig.replicaHosts = savedConfig.replicaHosts;
+                     databaseConfig.maxReplicaLag = savedConfig.maxReplicaLag;
+                     databaseConfig.jdbcUrl = savedConfig.jdbcUrl;
+                     databaseConfig.driverClass = savedConfig.driverClass;
+                     databaseConfig.savedConnection = savedConfig.connectionName;
                     
                         $.post(
                                 "command/database/connect",
@@ -110,6 +116,12 @@ DatabaseExtension.handleConnectClicked = function(connectionName) {
                                   $( "#currentDatabaseHostInput" ).val(databaseConfig.databaseServer);
                                   $( "#currentDatabasePortInput" ).val(databaseConfig.databasePort);
                                   $( "#currentInitialDatabaseInput" ).val(databaseConfig.initialDatabase);
+                                  $( "#currentConnectionPropertiesInput" ).val(databaseConfig.connectionProperties);
+                                  $( "#currentReplicaHostsInput" ).val(databaseConfig.replicaHosts);
+                                  $( "#currentMaxReplicaLagInput" ).val(databaseConfig.maxReplicaLag);
+                                  $( "#currentJdbcUrlInput" ).val(databaseConfig.jdbcUrl);
+                                  $( "#currentDriverClassInput" ).val(databaseConfig.driverClass);
+                                  $( "#currentSavedConnectionInput" ).val(databaseConfig.savedConnection);
                                   
                                   var connectionParam = "Connection[" + databaseConfig.connectionName + "] :: "
                                           + "jdbc:"
@@ -117,6 +129,11 @@ DatabaseExtension.handleConnectClicked = function(connectionName) {
                                         + databaseConfig.databaseServer + ":"
                                         + databaseConfig.databasePort + "/"
                                         + databaseConfig.initialDatabase;
+                                  if(databaseConfig.databaseType === "jdbc") {
+                                      connectionParam = "Connection[" + databaseConfig.connectionName + "] :: " + databaseConfig.jdbcUrl;
+                                  } else if(databaseConfig.databaseType === "sqlite") {
+                                      connectionParam = "Connection[" + databaseConfig.connectionName + "] :: jdbc:sqlite:" + databaseConfig.initialDatabase;
+                                  }
                                  
                                   $( "#connectionParameterSpan" ).text(connectionParam);
                                         $( "#newConnectionDiv" ).hide();
@@ -182,6 +199,12 @@ DatabaseExtension.handleEditConnectionClicked = function(connectionName) {
                            $( "#databasePassword" ).val(savedConfig.databasePassword);
                            $( "#initialDatabase" ).val(savedConfig.databaseName);
                            $( "#initialSchema" ).val(savedConfig.databaseSchema);
+                           $( "#connectionProperties" ).val(savedConfig.connectionProperties);
+                           $( "#replicaHosts" ).val(savedConfig.replicaHosts);
+                           $( "#maxReplicaLag" ).val(savedConfig.maxReplicaLag);
+                           $( "#jdbcUrl" ).val(savedConfig.jdbcUrl);
+                           $( "#driverClass" ).val(savedConfig.driverClass);
+                           Refine.DatabaseSourceUI.showConnectionFields(savedConfig.databaseType);
                            $( "#newConnectionControlDiv" ).hide();
                            $( "#editConnectionControlDiv" ).show();
                            $( "#newConnectionDiv" ).show();
@@ -126,6 +126,10 @@ Refine.DatabaseImportController.prototype.getOptions = function() {
     }
     options.storeBlankRows = this._parsingPanelElmts.storeBlankRowsCheckbox[0].checked;
     options.storeBlankCellsAsNulls = this._parsingPanelElmts.storeBlankCellsAsNullsCheckbox[0].checked;
+    options.importMode = this._parsingPanelElmts.importModeSelect[0].value;
+    if (options.importMode === "keyset") {
+      options.keyColumn = $.trim(this._parsingPanelElmts.keyColumnInput[0].value);
+    }
 
     return options;
 };
@@ -151,6 +155,11 @@ Refine.DatabaseImportController.prototype._showParsingPanel = function() {
     this._parsingPanelElmts.database_limit.html($.i18n._('database-parsing')["limit"]);
     this._parsingPanelElmts.database_store_row.html($.i18n._('database-parsing')["store-row"]);
     this._parsingPanelElmts.database_store_cell.html($.i18n._('database-parsing')["store-cell"]);
+    this._parsingPanelElmts.database_import_mode.html($.i18n._('database-parsing')["import-mode"]);
+    this._parsingPanelElmts.database_import_mode_stream.html($.i18n._('database-parsing')["import-mode-stream"]);
+    this._parsingPanelElmts.database_import_mode_page.html($.i18n._('database-parsing')["import-mode-page"]);
+    this._parsingPanelElmts.database_import_mode_keyset.html($.i18n._('database-parsing')["import-mode-keyset"]);
+    this._parsingPanelElmts.database_key_column.html($.i18n._('database-parsing')["key-column"]);
     
     if (this._parsingPanelResizer) {
       $(window).unbind('resize', this._parsingPanelResizer);
@@ -215,6 +224,17 @@ Refine.DatabaseImportController.prototype._showParsingPanel = function() {
     if (this._options.storeBlankCellsAsNulls) {
       this._parsingPanelElmts.storeBlankCellsAsNullsCheckbox.prop("checked", true);
     }
+    if (this._options.importMode) {
+      this._parsingPanelElmts.importModeSelect.val(this._options.importMode);
+    }
+    if (this._options.keyColumn) {
+      this._parsingPanelElmts.keyColumnInput[0].value = this._options.keyColumn;
+    }
+    var showKeyColumn = function() {
+      self._parsingPanelElmts.keyColumnRow.toggle(self._parsingPanelElmts.importModeSelect.val() === "keyset");
+    };
+    this._parsingPanelElmts.importModeSelect.bind("change", showKeyColumn);
+    showKeyColumn();
 
     var onChange = function() {
       self._scheduleUpdatePreview();
@@ -325,6 +345,11 @@ Refine.DatabaseImportController.prototype._createProject = function() {
     
     var self = this;
     var options = this.getOptions();
+    if (options.importMode === "keyset" && !options.keyColumn) {
+      window.alert("Please name the key column to order the pages by.");
+      this._parsingPanelElmts.keyColumnInput.focus();
+      return;
+    }
     options.projectName = projectName;
     
     this._queryInfo.options = JSON.stringify(options);
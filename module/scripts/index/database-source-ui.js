@@ -47,6 +47,11 @@ Refine.DatabaseSourceUI.prototype.attachUI = function(body) {
   $('#databasePasswordLabel').text($.i18n._("database-source")["databasePasswordLabel"]);
   $('#databaseNameLabel').text($.i18n._("database-source")["databaseNameLabel"]);
   $('#databaseSchemaLabel').text($.i18n._("database-source")["databaseSchemaLabel"]);
+  $('#connectionPropertiesLabel').text($.i18n._("database-source")["connectionPropertiesLabel"]);
+  $('#replicaHostsLabel').text($.i18n._("database-source")["replicaHostsLabel"]);
+  $('#maxReplicaLagLabel').text($.i18n._("database-source")["maxReplicaLagLabel"]);
+  $('#jdbcUrlLabel').text($.i18n._("database-source")["jdbcUrlLabel"]);
+  $('#driverClassLabel').text($.i18n._("database-source")["driverClassLabel"]);
   $('#databaseTestButton').text($.i18n._("database-source")["databaseTestButton"]);
   $('#databaseSaveButton').text($.i18n._("database-source")["databaseSaveButton"]);
   $('#databaseConnectButton').text($.i18n._("database-source")["databaseConnectButton"]);
@@ -75,10 +80,17 @@ Refine.DatabaseSourceUI.prototype.attachUI = function(body) {
       }else if(type === "mariadb"){
           $( "#databaseUser" ).val("root");
            $( "#databasePort" ).val("3306");	  
+      }else if(type === "sqlite"){
+          $( "#databaseUser" ).val("");
+          $( "#databasePort" ).val("");
+      }else if(type === "jdbc"){
+          $( "#databaseUser" ).val("");
+          $( "#databasePort" ).val("");
       }else{
           $( "#databaseUser" ).val("root");
           $( "#databasePort" ).val("3306");
       }
+      Refine.DatabaseSourceUI.showConnectionFields(type);
   });
   
   this._elmts.testDatabaseButton.click(function(evt) {
@@ -121,6 +133,16 @@ Refine.DatabaseSourceUI.prototype.attachUI = function(body) {
         jdbcQueryInfo.databaseUser = $( "#currentDatabaseUserInput" ).val();
         jdbcQueryInfo.databasePassword = $( "#currentDatabasePasswordInput" ).val();
         jdbcQueryInfo.initialDatabase = $( "#currentInitialDatabaseInput" ).val();
+        jdbcQueryInfo.connectionProperties = $( "#currentConnectionPropertiesInput" ).val();
+        jdbcQueryInfo.replicaHosts = $( "#currentReplicaHostsInput" ).val();
+        jdbcQueryInfo.maxReplicaLag = $( "#currentMaxReplicaLagInput" ).val();
+        jdbcQueryInfo.jdbcUrl = $( "#currentJdbcUrlInput" ).val();
+        jdbcQueryInfo.driverClass = $( "#currentDriverClassInput" ).val();
+        jdbcQueryInfo.savedConnection = $( "#currentSavedConnectionInput" ).val();
+        if(jdbcQueryInfo.savedConnection) {
+            // resolved on the server, no need to send the password again
+            delete jdbcQueryInfo.databasePassword;
+        }
         jdbcQueryInfo.query = $.trim($( "#queryTextArea" ).val()); 
         
 //	    if(jdbcQueryInfo.query && jdbcQueryInfo.query.length > 0 ) {
@@ -269,6 +291,11 @@ Refine.DatabaseSourceUI.prototype._executeQuery = function(jdbcQueryInfo) {
       function(jdbcConnectionResult) {
          // $("#executeQueryBtn").text('Preview Query Result').removeAttr('disabled');
           dismiss();
+          if(jdbcConnectionResult && jdbcConnectionResult.code === "error") {
+              // a slow query can fail after the response has started, so the error is in the body
+              alert(jdbcConnectionResult.message);
+              return;
+          }
           self._controller.startImportingDocument(jdbcQueryInfo);
               
       },
@@ -385,6 +412,12 @@ Refine.DatabaseSourceUI.prototype._connect = function(jdbcConnectionInfo) {
               $( "#currentDatabaseHostInput" ).val(jdbcConnectionInfo.databaseServer);
               $( "#currentDatabasePortInput" ).val(jdbcConnectionInfo.databasePort);
               $( "#currentInitialDatabaseInput" ).val(jdbcConnectionInfo.initialDatabase);
+              $( "#currentConnectionPropertiesInput" ).val(jdbcConnectionInfo.connectionProperties);
+              $( "#currentReplicaHostsInput" ).val(jdbcConnectionInfo.replicaHosts);
+              $( "#currentMaxReplicaLagInput" ).val(jdbcConnectionInfo.maxReplicaLag);
+              $( "#currentJdbcUrlInput" ).val(jdbcConnectionInfo.jdbcUrl);
+              $( "#currentDriverClassInput" ).val(jdbcConnectionInfo.driverClass);
+              $( "#currentSavedConnectionInput" ).val("");
               
               var connectionParam = "Connection :: "
                       + "jdbc:"
@@ -392,6 +425,11 @@ Refine.DatabaseSourceUI.prototype._connect = function(jdbcConnectionInfo) {
                     + jdbcConnectionInfo.databaseServer + ":"
                     + jdbcConnectionInfo.databasePort + "/"
                     + jdbcConnectionInfo.initialDatabase;
+              if(jdbcConnectionInfo.databaseType === "jdbc") {
+                  connectionParam = "Connection :: " + jdbcConnectionInfo.jdbcUrl;
+              } else if(jdbcConnectionInfo.databaseType === "sqlite") {
+                  connectionParam = "Connection :: jdbc:sqlite:" + jdbcConnectionInfo.initialDatabase;
+              }
               
               //alert("connectionParam::" + connectionParam);
               $( "#connectionParameterSpan" ).text(connectionParam);
@@ -424,6 +462,11 @@ Refine.DatabaseSourceUI.prototype._getConnectionInfo = function() {
          jdbcConnectionInfo.databasePassword = $.trim(self._elmts.databasePasswordInput[0].value); 
          jdbcConnectionInfo.initialDatabase = $.trim(self._elmts.initialDatabaseInput[0].value);
          jdbcConnectionInfo.initialSchema = $.trim(self._elmts.initialSchemaInput[0].value);
+         jdbcConnectionInfo.connectionProperties = $.trim(self._elmts.connectionPropertiesInput[0].value);
+         jdbcConnectionInfo.replicaHosts = $.trim(self._elmts.replicaHostsInput[0].value);
+         jdbcConnectionInfo.maxReplicaLag = $.trim(self._elmts.maxReplicaLagInput[0].value);
+         jdbcConnectionInfo.jdbcUrl = $.trim(self._elmts.jdbcUrlInput[0].value);
+         jdbcConnectionInfo.driverClass = $.trim(self._elmts.driverClassInput[0].value);
          return jdbcConnectionInfo;
     
 }
@@ -440,6 +483,22 @@ Refine.DatabaseSourceUI.prototype._validateNewConnectionForm = function() {
         var initialDatabaseInput = $.trim(self._elmts.initialDatabaseInput[0].value);
         var initialSchemaInput = $.trim(self._elmts.initialSchemaInput[0].value);
         
+        if (databaseTypeSelect === "jdbc") {
+            if ($.trim(self._elmts.jdbcUrlInput[0].value).length === 0) {
+                window.alert($.i18n._('database-source')["alert-jdbc-url"]);
+                return false;
+            }
+            return true;
+        }
+        
+        if (databaseTypeSelect === "sqlite") {
+            if (initialDatabaseInput.length === 0) {
+                window.alert($.i18n._('database-source')["alert-initial-database"]);
+                return false;
+            }
+            return true;
+        }
+        
         if (databaseHostInput.length === 0) {
             window.alert($.i18n._('database-source')["alert-server"]);
             return false;
@@ -461,6 +520,24 @@ Refine.DatabaseSourceUI.prototype._validateNewConnectionForm = function() {
        return true;
 };	
 
+/**
+ * The generic "jdbc" type is reached through a JDBC URL instead of host, port and database,
+ * and a SQLite file through its path alone, given as the database.
+ */
+Refine.DatabaseSourceUI.showConnectionFields = function(databaseType) {
+    if(databaseType === "jdbc") {
+        $( ".serverField" ).hide();
+        $( ".jdbcUrlField" ).show();
+    } else if(databaseType === "sqlite") {
+        $( ".jdbcUrlField" ).hide();
+        $( ".networkField" ).hide();
+        $( ".serverField" ).not( ".networkField" ).show();
+    } else {
+        $( ".jdbcUrlField" ).hide();
+        $( ".serverField" ).show();
+    }
+};
+
 Refine.DatabaseSourceUI.prototype._resetDatabaseImportForm = function() {	
     var self = this;
     $( "#connectionName" ).val("127.0.0.1");
@@ -471,6 +548,12 @@ Refine.DatabaseSourceUI.prototype._resetDatabaseImportForm = function() {
     $( "#databasePassword" ).val("");
     $( "#initialDatabase" ).val("");
     $( "#initialSchema" ).val("");
+    $( "#connectionProperties" ).val("");
+    $( "#replicaHosts" ).val("");
+    $( "#maxReplicaLag" ).val("");
+    $( "#jdbcUrl" ).val("");
+    $( "#driverClass" ).val("");
+    Refine.DatabaseSourceUI.showConnectionFields("postgresql");
     
     $( "#editConnectionControlDiv" ).hide();
     $( "#newConnectionControlDiv" ).show();
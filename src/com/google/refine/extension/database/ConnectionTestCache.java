@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.pool.ConnectionPoolKey;
+
+/**
+ * Remembers successful connection tests for testConnection.cacheTtl ms, so the UI
+ * can test the same settings again and again without touching the server. Concurrent
+ * tests of the same settings wait for the one already running instead of starting their own.
+ * A failure is only shared with those; it is forgotten once the test is over, so a user
+ * who fixed the server or the credentials can test again straight away.
+ * <p>
+ * Settings are told apart by everything that decides where and how a connection is
+ * made, password and driver properties included.
+ */
+public class ConnectionTestCache {
+
+    private static final Logger logger = LoggerFactory.getLogger("ConnectionTestCache");
+
+    private static final int DEFAULT_TTL = 10000;
+
+    private static ConnectionTestCache instance;
+
+    private final Map<Object, Entry> entries = new ConcurrentHashMap<Object, Entry>();
+
+    ConnectionTestCache() {
+    }
+
+    public static synchronized ConnectionTestCache getInstance() {
+        if (instance == null) {
+            instance = new ConnectionTestCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Test a connection, or return the result of a recent test of the same settings.
+     * @param dbConfig
+     * @param databaseService
+     * @return
+     * @throws DatabaseServiceException the failure of the test, possibly of one running concurrently
+     */
+    public boolean testConnection(final DatabaseConfiguration dbConfig, final DatabaseService databaseService)
+            throws DatabaseServiceException {
+        long ttl = DatabaseModuleImpl.getIntProperty("testConnection.cacheTtl", DEFAULT_TTL);
+        if (ttl <= 0) {
+            return databaseService.testConnection(dbConfig);
+        }
+        Object fingerprint = Arrays.asList(new ConnectionPoolKey(dbConfig), dbConfig.getDatabaseSchema());
+        long now = System.currentTimeMillis();
+
+        Entry entry = entries.get(fingerprint);
+        if (entry != null && entry.isExpired(now, ttl)) {
+            entries.remove(fingerprint, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            Entry created = new Entry(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws DatabaseServiceException {
+                    return databaseService.testConnection(dbConfig);
+                }
+            });
+            entry = entries.putIfAbsent(fingerprint, created);
+            if (entry == null) {
+                entry = created;
+                evictExpired(now, ttl);
+                created.run();
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("Joining the running test of {}", dbConfig.getConnectionName());
+            }
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("Reusing a recent test of {}", dbConfig.getConnectionName());
+        }
+        try {
+            boolean result = entry.getResult();
+            if (!result) {
+                entries.remove(fingerprint, entry);
+            }
+            return result;
+        } catch (DatabaseServiceException e) {
+            entries.remove(fingerprint, entry);
+            throw e;
+        } catch (RuntimeException e) {
+            entries.remove(fingerprint, entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Forget all results, for example after saved connections changed.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private void evictExpired(long now, long ttl) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isExpired(now, ttl)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static class Entry extends FutureTask<Boolean> {
+
+        private volatile long completedAt;
+
+        Entry(Callable<Boolean> test) {
+            super(test);
+        }
+
+        @Override
+        protected void done() {
+            completedAt = System.currentTimeMillis();
+        }
+
+        boolean isExpired(long now, long ttl) {
+            return completedAt > 0 && now - completedAt >= ttl;
+        }
+
+        boolean getResult() throws DatabaseServiceException {
+            try {
+                return super.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseServiceException("Interrupted while testing the connection");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof DatabaseServiceException) {
+                    throw (DatabaseServiceException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new DatabaseServiceException(String.valueOf(cause));
+            }
+        }
+    }
+
+}
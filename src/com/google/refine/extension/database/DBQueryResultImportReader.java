@@ -29,6 +29,7 @@
 package com.google.refine.extension.database;
 
 import java.io.IOException;
+import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,10 +43,20 @@ import com.google.refine.importers.TabularImportingParserBase.TableDataReader;
 import com.google.refine.importing.ImportingJob;
 
 
+/**
+ * Reads the result of a query into a new project, a batch at a time. By default the query
+ * runs once and its rows are streamed from a forward-only cursor; in {@link #MODE_PAGE}
+ * the query is run again for each batch, with a LIMIT and OFFSET, and in
+ * {@link #MODE_KEYSET} with a LIMIT and the last key read so far.
+ */
 public class DBQueryResultImportReader implements TableDataReader {
     
     private static final Logger logger = LoggerFactory.getLogger("DBQueryResultImportReader");
 
+    public static final String MODE_STREAM = "stream";
+    public static final String MODE_PAGE = "page";
+    public static final String MODE_KEYSET = "keyset";
+
     private final ImportingJob job;
     private final String querySource;    
     private List<DatabaseColumn> dbColumns;
@@ -57,14 +68,22 @@ public class DBQueryResultImportReader implements TableDataReader {
     private List<List<Object>> rowsOfCells = null;
     private boolean usedHeaders = false;
     private DatabaseService databaseService;
+    private final Connection connection;
     private DatabaseQueryInfo dbQueryInfo;
     private  int processedRows = 0;
     private static int progress = 0;
+    private long estimatedRows = -1;
+    private String importMode = MODE_STREAM;
+    private DatabaseRowCursor cursor = null;
+    private String keyColumn = null;
+    private int keyIndex = -1;
+    private Object lastKey = null;
     
     
     public DBQueryResultImportReader(
             ImportingJob job, 
             DatabaseService databaseService,
+            Connection connection,
             String querySource,
             List<DatabaseColumn> columns,
             DatabaseQueryInfo dbQueryInfo,
@@ -75,6 +94,7 @@ public class DBQueryResultImportReader implements TableDataReader {
         this.batchSize = batchSize;
         this.dbColumns = columns;
         this.databaseService = databaseService;
+        this.connection = connection;
         this.dbQueryInfo = dbQueryInfo;
         logger.info("batchSize:" + batchSize);
 
@@ -100,7 +120,7 @@ public class DBQueryResultImportReader implements TableDataReader {
             rowsOfCells = getRowsOfCells(newBatchRowStart);
             processedRows = processedRows + rowsOfCells.size();
             batchRowStart = newBatchRowStart;
-            setProgress(job, querySource, -1 /* batchRowStart * 100 / totalRows */);
+            setProgress(job, querySource, estimatedRows > 0 ? getPercentDone(batchRowStart) : -1);
         }
         
         if (rowsOfCells != null && nextRow - batchRowStart < rowsOfCells.size()) {
@@ -115,7 +135,7 @@ public class DBQueryResultImportReader implements TableDataReader {
              
                 nextRow = 0;
                 if(processedRows % 100 == 0) {
-                    setProgress(job, querySource, progress++);
+                    setProgress(job, querySource, estimatedRows > 0 ? getPercentDone(processedRows) : progress++);
                 }
                 if(processedRows % 10000 == 0) {
                     if(logger.isDebugEnabled()) {
@@ -152,10 +172,7 @@ public class DBQueryResultImportReader implements TableDataReader {
         
         List<List<Object>> rowsOfCells = new ArrayList<List<Object>>(batchSize);
         
-        String query = databaseService.buildLimitQuery(batchSize, startRow, dbQueryInfo.getQuery());
-        //logger.info("batchSize::"  + batchSize +  " startRow::" + startRow + " query::" + query );
-        
-        List<DatabaseRow> dbRows = databaseService.getRows(dbQueryInfo.getDbConfig(), query);
+        List<DatabaseRow> dbRows = fetchRows(startRow);
 
         if(dbRows != null && !dbRows.isEmpty() && dbRows.size() > 0) {
             
@@ -197,12 +214,108 @@ public class DBQueryResultImportReader implements TableDataReader {
             }
          
         }
+        if (MODE_KEYSET.equals(importMode) && !dbRows.isEmpty()) {
+            // the key as the driver typed it, so the next page compares dates as dates and decimals as numbers
+            lastKey = dbRows.get(dbRows.size() - 1).getKey();
+            if (lastKey == null) {
+                throw new DatabaseServiceException("Key column " + keyColumn + " has an empty value; its values must be unique and not null");
+            }
+        }
         end = dbRows.size() < batchSize + 1;
         //logger.info("Exit::getRowsOfCells::rowsOfCells:{}", rowsOfCells); 
         return rowsOfCells;
      
     }
+
+    private List<DatabaseRow> fetchRows(int startRow) throws DatabaseServiceException {
+        if (MODE_PAGE.equals(importMode)) {
+            return databaseService.getRows(connection, dbQueryInfo.getQuery(), batchSize, startRow);
+        }
+        if (MODE_KEYSET.equals(importMode)) {
+            if (keyIndex < 0) {
+                keyIndex = findColumn(keyColumn);
+            }
+            DatabaseColumn key = dbColumns.get(keyIndex);
+            // the query is wrapped in an outer select, which only knows the column by its label
+            String keyName = key.getLabel() != null ? key.getLabel() : key.getName();
+            return databaseService.getRowsAfter(connection, dbQueryInfo.getQuery(), keyName, lastKey, batchSize);
+        }
+        if (cursor == null) {
+            cursor = databaseService.openCursor(connection, dbQueryInfo.getQuery(), batchSize);
+        }
+        List<DatabaseRow> dbRows = cursor.next(batchSize);
+        if (dbRows.size() < batchSize) {
+            cursor.close();
+        }
+        return dbRows;
+    }
+
+    private int findColumn(String name) throws DatabaseServiceException {
+        if (name != null) {
+            for (int i = 0; i < dbColumns.size(); i++) {
+                DatabaseColumn col = dbColumns.get(i);
+                if (name.equalsIgnoreCase(col.getName()) || name.equalsIgnoreCase(col.getLabel())) {
+                    return i;
+                }
+            }
+        }
+        throw new DatabaseServiceException("Key column " + name + " is not a column of the query");
+    }
+
+    /**
+     * Read the rows of a {@link #MODE_STREAM} import from a cursor that is already open,
+     * such as the one the import's columns were taken from.
+     * @param cursor
+     */
+    public void setCursor(DatabaseRowCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @param importMode {@link #MODE_STREAM}, {@link #MODE_PAGE} or {@link #MODE_KEYSET}
+     */
+    public void setImportMode(String importMode) {
+        this.importMode = importMode;
+    }
+
+    public String getImportMode() {
+        return importMode;
+    }
+
+    /**
+     * @param keyColumn the unique, non-null column that orders the pages of {@link #MODE_KEYSET}
+     */
+    public void setKeyColumn(String keyColumn) {
+        this.keyColumn = keyColumn;
+    }
+
+    public String getKeyColumn() {
+        return keyColumn;
+    }
+
+    /**
+     * Close the cursor of a streamed import, when the import stopped before reading all of it.
+     */
+    public void close() {
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
     
+    /**
+     * Progress is reported against the planner's estimate of the result size, when the
+     * database gave one; see {@link DatabaseService#estimateRowCount(Connection, String)}.
+     * @param estimatedRows the estimate, or -1 when there is none
+     */
+    public void setEstimatedRows(long estimatedRows) {
+        this.estimatedRows = estimatedRows;
+    }
+
+    private int getPercentDone(long rows) {
+        // the estimate can be short of the real count, so stay below 100 until the import ends
+        return (int) Math.min(99, rows * 100 / estimatedRows);
+    }
+
     private static void setProgress(ImportingJob job, String querySource, int percent) {
         job.setProgress(percent, "Reading " + querySource);
     }
@@ -29,6 +29,7 @@
 package com.google.refine.extension.database;
 
 import java.io.IOException;
+import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -57,12 +58,14 @@ public class DBQueryResultPreviewReader implements TableDataReader {
     private List<List<Object>> rowsOfCells = null;
     private boolean usedHeaders = false;
     private DatabaseService databaseService;
+    private final Connection connection;
     private DatabaseQueryInfo dbQueryInfo;
     
     
     public DBQueryResultPreviewReader(
             ImportingJob job, 
             DatabaseService databaseService,
+            Connection connection,
             String querySource,
             List<DatabaseColumn> columns,
             DatabaseQueryInfo dbQueryInfo,
@@ -73,6 +76,7 @@ public class DBQueryResultPreviewReader implements TableDataReader {
         this.batchSize = batchSize;
         this.dbColumns = columns;
         this.databaseService = databaseService;
+        this.connection = connection;
         this.dbQueryInfo = dbQueryInfo;
         logger.debug("DBQueryResultPreviewReader::batchSize:" + batchSize);
 
@@ -136,12 +140,11 @@ public class DBQueryResultPreviewReader implements TableDataReader {
         
         List<List<Object>> rowsOfCells = new ArrayList<List<Object>>(batchSize);
         
-        String query = databaseService.buildLimitQuery(batchSize, startRow, dbQueryInfo.getQuery());
         if(logger.isDebugEnabled()) {
-            logger.debug("batchSize::"  + batchSize +  " startRow::" + startRow + " query::" + query );
+            logger.debug("batchSize::"  + batchSize +  " startRow::" + startRow + " query::" + dbQueryInfo.getQuery() );
         }
         
-        List<DatabaseRow> dbRows = databaseService.getRows(dbQueryInfo.getDbConfig(), query);
+        List<DatabaseRow> dbRows = databaseService.getRows(connection, dbQueryInfo.getQuery(), batchSize, startRow);
 
         if(dbRows != null && !dbRows.isEmpty() && dbRows.size() > 0) {
             
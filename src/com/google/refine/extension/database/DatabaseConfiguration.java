@@ -28,6 +28,10 @@
  */
 package com.google.refine.extension.database;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class DatabaseConfiguration {
     
@@ -42,6 +46,12 @@ public class DatabaseConfiguration {
     
     //optional parameters
     private boolean useSSL;
+    private SessionProfile sessionProfile;
+    private Map<String, String> connectionProperties = new LinkedHashMap<String, String>();
+    private List<String> replicaHosts = new ArrayList<String>();
+    private int maxReplicaLag;
+    private String jdbcUrl;
+    private String driverClass;
     
     
     public String getConnectionName() {
@@ -118,12 +128,86 @@ public class DatabaseConfiguration {
         this.useSSL = useSSL;
     }
 
+    /**
+     * Extra JDBC driver properties, such as defaultRowFetchSize or useCompression,
+     * passed to the driver when a connection is opened.
+     */
+    public Map<String, String> getConnectionProperties() {
+        return connectionProperties;
+    }
+
+    public void setConnectionProperties(Map<String, String> connectionProperties) {
+        this.connectionProperties = connectionProperties == null
+                ? new LinkedHashMap<String, String>() : connectionProperties;
+    }
+
+    /**
+     * Read replicas of the database, as host or host:port. Previews, imports and queries
+     * are routed to them; the primary host stays in use for everything else.
+     */
+    public List<String> getReplicaHosts() {
+        return replicaHosts;
+    }
+
+    public void setReplicaHosts(List<String> replicaHosts) {
+        this.replicaHosts = replicaHosts == null ? new ArrayList<String>() : replicaHosts;
+    }
+
+    /**
+     * Replication lag in seconds above which a replica is not used; 0 does not check lag.
+     */
+    public int getMaxReplicaLag() {
+        return maxReplicaLag;
+    }
+
+    public void setMaxReplicaLag(int maxReplicaLag) {
+        this.maxReplicaLag = maxReplicaLag;
+    }
+
+    /**
+     * The full JDBC URL, for the generic "jdbc" database type, which connects through
+     * any driver on the module classpath instead of host, port and database name.
+     */
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public void setJdbcUrl(String jdbcUrl) {
+        this.jdbcUrl = jdbcUrl;
+    }
+
+    /**
+     * The JDBC driver class for {@link #getJdbcUrl()}; when empty the driver that accepts
+     * the URL is looked up.
+     */
+    public String getDriverClass() {
+        return driverClass;
+    }
+
+    public void setDriverClass(String driverClass) {
+        this.driverClass = driverClass;
+    }
+
+    /**
+     * Session settings for imports and previews; null means {@link SessionProfile#forImport()}.
+     */
+    public SessionProfile getSessionProfile() {
+        return sessionProfile;
+    }
+
+    public void setSessionProfile(SessionProfile sessionProfile) {
+        this.sessionProfile = sessionProfile;
+    }
+
     @Override
     public String toString() {
         return "DatabaseConfiguration [connectionName=" + connectionName + ", databaseType=" + databaseType
                 + ", databaseHost=" + databaseHost + ", databasePort=" + databasePort + ", databaseUser=" + databaseUser
                 + ", databaseName=" + databaseName + ", databaseSchema="
-                + databaseSchema + ", useSSL=" + useSSL + "]";
+                + databaseSchema + ", useSSL=" + useSSL + ", sessionProfile=" + sessionProfile
+                + ", connectionProperties=" + connectionProperties.keySet()
+                + ", replicaHosts=" + replicaHosts + ", maxReplicaLag=" + maxReplicaLag
+                + ", driverClass=" + driverClass + "]";
     }
     
     
@@ -31,6 +31,7 @@ package com.google.refine.extension.database;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.sql.Connection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
@@ -51,6 +52,7 @@ import com.google.refine.RefineServlet;
 import com.google.refine.commands.HttpUtilities;
 import com.google.refine.extension.database.model.DatabaseColumn;
 import com.google.refine.extension.database.model.DatabaseQueryInfo;
+import com.google.refine.extension.database.pool.ConnectionLease;
 import com.google.refine.importers.TabularImportingParserBase;
 import com.google.refine.importing.ImportingController;
 import com.google.refine.importing.ImportingJob;
@@ -148,6 +150,7 @@ public class DatabaseImportController implements ImportingController {
         JSONUtilities.safePut(options, "skipDataLines", 0); 
         JSONUtilities.safePut(options, "storeBlankRows", true);
         JSONUtilities.safePut(options, "storeBlankCellsAsNulls", true);
+        JSONUtilities.safePut(options, "importMode", DatabaseModuleImpl.getImportCreateMode());
         if(logger.isDebugEnabled()) {
             logger.debug("doInitializeParserUI:::{}", result.toString());
         }
@@ -278,25 +281,31 @@ public class DatabaseImportController implements ImportingController {
         DatabaseService databaseService = DatabaseService.get(dbQueryInfo.getDbConfig().getDatabaseType());
         String querySource = getQuerySource(dbQueryInfo);
         
-        List<DatabaseColumn> columns = databaseService.getColumns(dbQueryInfo.getDbConfig(), dbQueryInfo.getQuery());
+        // the job keeps one connection for all of its batches; no other job can close it underneath
+        ConnectionLease lease = databaseService.leaseConnection(dbQueryInfo.getDbConfig(), getLeaseOwner(job));
+        try {
+            List<DatabaseColumn> columns = databaseService.getColumns(lease.getConnection(), dbQueryInfo.getQuery());
                 
         
-        setProgress(job, querySource, -1);
+            setProgress(job, querySource, -1);
 
-        JSONUtilities.safePut(options, "ignoreLines", 0); // number of blank lines at the beginning to ignore
-        JSONUtilities.safePut(options, "headerLines", 1); // number of header lines
+            JSONUtilities.safePut(options, "ignoreLines", 0); // number of blank lines at the beginning to ignore
+            JSONUtilities.safePut(options, "headerLines", 1); // number of header lines
 
         
-        TabularImportingParserBase.readTable(
-                project,
-                metadata,
-                job,
-                new DBQueryResultPreviewReader(job, databaseService, querySource, columns, dbQueryInfo, 100),
-                querySource,
-                limit,
-                options,
-                exceptions
-            );
+            TabularImportingParserBase.readTable(
+                    project,
+                    metadata,
+                    job,
+                    new DBQueryResultPreviewReader(job, databaseService, lease.getConnection(), querySource, columns, dbQueryInfo, 100),
+                    querySource,
+                    limit,
+                    options,
+                    exceptions
+                );
+        } finally {
+            lease.close();
+        }
         
         setProgress(job, querySource, 100);
        
@@ -407,35 +416,94 @@ public class DatabaseImportController implements ImportingController {
         DatabaseService databaseService = DatabaseService.get(dbQueryInfo.getDbConfig().getDatabaseType());
         String querySource = getQuerySource(dbQueryInfo);
         
-        List<DatabaseColumn> columns = databaseService.getColumns(dbQueryInfo.getDbConfig(), dbQueryInfo.getQuery());       
-        
-        setProgress(job, querySource, -1);
+        // the job keeps one connection for all of its batches; no other job can close it underneath
+        ConnectionLease lease = databaseService.leaseConnection(dbQueryInfo.getDbConfig(), getLeaseOwner(job));
+        try {
+            setProgress(job, querySource, -1);
 
-        JSONUtilities.safePut(options, "ignoreLines", 0); // number of blank lines at the beginning to ignore
-        JSONUtilities.safePut(options, "headerLines", 1); // number of header lines
+            JSONUtilities.safePut(options, "ignoreLines", 0); // number of blank lines at the beginning to ignore
+            JSONUtilities.safePut(options, "headerLines", 1); // number of header lines
     
-        long startTime = System.currentTimeMillis() ;
+            long startTime = System.currentTimeMillis() ;
         
-        TabularImportingParserBase.readTable(
-                project,
-                metadata,
-                job,
-                new DBQueryResultImportReader(job, databaseService, querySource, columns, dbQueryInfo, getCreateBatchSize()),
-                querySource,
-                limit,
-                options,
-                exceptions
-            );
+            DBQueryResultImportReader reader = createImportReader(job, databaseService, lease.getConnection(), querySource, dbQueryInfo,
+                    getCreateBatchSize(),
+                    JSONUtilities.getString(options, "importMode", DatabaseModuleImpl.getImportCreateMode()),
+                    JSONUtilities.getString(options, "keyColumn", null));
+            
+            try {
+                TabularImportingParserBase.readTable(
+                        project,
+                        metadata,
+                        job,
+                        reader,
+                        querySource,
+                        limit,
+                        options,
+                        exceptions
+                    );
+            } finally {
+                reader.close();
+            }
         
-        long endTime = System.currentTimeMillis() ;
-        if(logger.isDebugEnabled()) {
-            logger.debug("Execution Time: {}", endTime - startTime);
+            long endTime = System.currentTimeMillis() ;
+            if(logger.isDebugEnabled()) {
+                logger.debug("Execution Time: {}", endTime - startTime);
+            }
+        } finally {
+            lease.close();
         }
         
         setProgress(job, querySource, 100);
      
     }
     
+    /**
+     * Set up the reader of a new project. A streamed import runs its query once, through
+     * the cursor it takes its columns from; the paged modes only describe the query up front.
+     * @param job
+     * @param databaseService
+     * @param connection
+     * @param querySource
+     * @param dbQueryInfo
+     * @param batchSize
+     * @param importMode
+     * @param keyColumn
+     * @return
+     * @throws DatabaseServiceException
+     */
+    static DBQueryResultImportReader createImportReader(
+            ImportingJob job,
+            DatabaseService databaseService,
+            Connection connection,
+            String querySource,
+            DatabaseQueryInfo dbQueryInfo,
+            int batchSize,
+            String importMode,
+            String keyColumn) throws DatabaseServiceException {
+        
+        // estimated first: some drivers allow no other statement while a streamed result is open
+        long estimatedRows = databaseService.estimateRowCount(connection, dbQueryInfo.getQuery());
+        
+        DBQueryResultImportReader reader;
+        if (DBQueryResultImportReader.MODE_PAGE.equals(importMode) || DBQueryResultImportReader.MODE_KEYSET.equals(importMode)) {
+            List<DatabaseColumn> columns = databaseService.getColumns(connection, dbQueryInfo.getQuery());
+            reader = new DBQueryResultImportReader(job, databaseService, connection, querySource, columns, dbQueryInfo, batchSize);
+        } else {
+            DatabaseRowCursor cursor = databaseService.openCursor(connection, dbQueryInfo.getQuery(), batchSize);
+            reader = new DBQueryResultImportReader(job, databaseService, connection, querySource, cursor.getColumns(), dbQueryInfo, batchSize);
+            reader.setCursor(cursor);
+        }
+        reader.setEstimatedRows(estimatedRows);
+        reader.setImportMode(importMode);
+        reader.setKeyColumn(keyColumn);
+        return reader;
+    }
+    
+    private static String getLeaseOwner(ImportingJob job) {
+        return "import-job-" + job.id;
+    }
+    
     private static int getCreateBatchSize() {
         String propBatchSize = DatabaseModuleImpl.getImportCreateBatchSize();
         int batchSize = 100;
@@ -454,19 +522,43 @@ public class DatabaseImportController implements ImportingController {
      * @return
      */
     private DatabaseQueryInfo getQueryInfo(HttpServletRequest request) {
+        String query = request.getParameter("query");
+        String savedConnection = request.getParameter("savedConnection");
+        if (savedConnection != null && !savedConnection.trim().isEmpty()) {
+            DatabaseConfiguration saved = SavedConnectionRegistry.getInstance().get(savedConnection);
+            if (saved != null) {
+                return query == null ? null : new DatabaseQueryInfo(saved, query);
+            }
+            logger.warn("Saved connection {} not found, using the request parameters", savedConnection);
+        }
+
         DatabaseConfiguration jdbcConfig = new DatabaseConfiguration();
         jdbcConfig.setConnectionName(request.getParameter("connectionName"));
         jdbcConfig.setDatabaseType(request.getParameter("databaseType"));
         jdbcConfig.setDatabaseHost(request.getParameter("databaseServer"));
-        jdbcConfig.setDatabasePort(Integer.parseInt(request.getParameter("databasePort")));
+        String dbPort = request.getParameter("databasePort");
+        if(dbPort != null && !dbPort.trim().isEmpty()) {
+            jdbcConfig.setDatabasePort(Integer.parseInt(dbPort.trim()));
+        }
         jdbcConfig.setDatabaseUser(request.getParameter("databaseUser"));
         jdbcConfig.setDatabasePassword(request.getParameter("databasePassword"));
         jdbcConfig.setDatabaseName(request.getParameter("initialDatabase"));
         jdbcConfig.setDatabaseSchema(request.getParameter("initialSchema"));
+        jdbcConfig.setConnectionProperties(
+                DatabaseUtils.parseConnectionProperties(request.getParameter("connectionProperties")));
+        jdbcConfig.setReplicaHosts(DatabaseUtils.parseHostList(request.getParameter("replicaHosts")));
+        jdbcConfig.setJdbcUrl(request.getParameter("jdbcUrl"));
+        jdbcConfig.setDriverClass(request.getParameter("driverClass"));
+        String maxReplicaLag = request.getParameter("maxReplicaLag");
+        if(maxReplicaLag != null && !maxReplicaLag.trim().isEmpty()) {
+            try {
+                jdbcConfig.setMaxReplicaLag(Integer.parseInt(maxReplicaLag.trim()));
+            }catch(NumberFormatException nfe) {}
+        }
         
-        String query = request.getParameter("query");
         logger.info("jdbcConfig::{}, query::{}", jdbcConfig, query);
-        if (jdbcConfig.getDatabaseHost() == null || jdbcConfig.getDatabaseName() == null
+        boolean hasUrl = jdbcConfig.getJdbcUrl() != null && !jdbcConfig.getJdbcUrl().trim().isEmpty();
+        if (!hasUrl && (jdbcConfig.getDatabaseHost() == null || jdbcConfig.getDatabaseName() == null)
                 || jdbcConfig.getDatabasePassword() == null || jdbcConfig.getDatabaseType() == null
                 || jdbcConfig.getDatabaseUser() == null || query == null) {
             if(logger.isDebugEnabled()) {
@@ -55,6 +55,7 @@ public class DatabaseModuleImpl extends ButterflyModuleImpl implements Jsonizabl
     
     private static String DEFAULT_CREATE_PROJ_BATCH_SIZE = "100";
     private static String DEFAULT_PREVIEW_BATCH_SIZE = "100";
+    private static String DEFAULT_CREATE_PROJ_MODE = "stream";
     
 
 
@@ -80,6 +81,23 @@ public class DatabaseModuleImpl extends ButterflyModuleImpl implements Jsonizabl
         return extensionProperties.getProperty("create.batchSize", DEFAULT_CREATE_PROJ_BATCH_SIZE);
     }
 
+    public static String getImportCreateMode() {
+        if(extensionProperties == null) {
+            return DEFAULT_CREATE_PROJ_MODE;
+        }
+        return extensionProperties.getProperty("create.importMode", DEFAULT_CREATE_PROJ_MODE);
+    }
+
+    /**
+     * The directory SQLite database files are opened from, null when it is not set.
+     */
+    public static String getSQLiteBaseDir() {
+        if(extensionProperties == null) {
+            return null;
+        }
+        return extensionProperties.getProperty("sqlite.baseDir");
+    }
+
     public static String getImportPreviewBatchSize() {
         if(extensionProperties == null) {
             return DEFAULT_PREVIEW_BATCH_SIZE;
@@ -87,6 +105,45 @@ public class DatabaseModuleImpl extends ButterflyModuleImpl implements Jsonizabl
         return extensionProperties.getProperty("preview.batchSize", DEFAULT_PREVIEW_BATCH_SIZE);
     }
 
+    /**
+     * Read an integer setting from dbextension.properties.
+     * @param key
+     * @param defaultValue returned when the property is missing or not a number
+     * @return
+     */
+    public static int getIntProperty(String key, int defaultValue) {
+        if(extensionProperties == null) {
+            return defaultValue;
+        }
+        String value = extensionProperties.getProperty(key);
+        if(value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch(NumberFormatException nfe) {
+            logger.warn("Invalid value {} for property {}, using {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a boolean setting from dbextension.properties.
+     * @param key
+     * @param defaultValue returned when the property is missing
+     * @return
+     */
+    public static boolean getBooleanProperty(String key, boolean defaultValue) {
+        if(extensionProperties == null) {
+            return defaultValue;
+        }
+        String value = extensionProperties.getProperty(key);
+        if(value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
     private void readModuleProperty() {
         // The module path
         File f = getPath();
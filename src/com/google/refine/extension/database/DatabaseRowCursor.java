@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.model.DatabaseColumn;
+import com.google.refine.extension.database.model.DatabaseRow;
+
+/**
+ * The open result of a query, read forward one row at a time. The query runs once, when
+ * the cursor is opened; closing the cursor closes its statement.
+ */
+public class DatabaseRowCursor implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger("DatabaseRowCursor");
+
+    private final Statement statement;
+    private final ResultSet resultSet;
+    private final List<DatabaseColumn> columns;
+    private final int columnCount;
+    private int index = 0;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    public DatabaseRowCursor(Statement statement, ResultSet resultSet) throws SQLException {
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.columns = JdbcDatabaseService.readColumns(resultSet.getMetaData());
+        this.columnCount = columns.size();
+    }
+
+    /**
+     * @return the columns of the result, so a caller that reads the rows needs no other
+     *         query to learn them
+     */
+    public List<DatabaseColumn> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the next row, or null once the result is exhausted
+     * @throws DatabaseServiceException
+     */
+    public DatabaseRow next() throws DatabaseServiceException {
+        if (closed) {
+            return null;
+        }
+        try {
+            if (!resultSet.next()) {
+                exhausted = true;
+                return null;
+            }
+            DatabaseRow row = new DatabaseRow();
+            row.setIndex(index++);
+            List<String> values = new ArrayList<String>(columnCount);
+            for (int i = 1; i <= columnCount; i++) {
+                values.add(resultSet.getString(i));
+            }
+            row.setValues(values);
+            return row;
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    /**
+     * Read up to the given number of rows.
+     * @param maxRows
+     * @return the rows read, fewer than asked for once the result is exhausted
+     * @throws DatabaseServiceException
+     */
+    public List<DatabaseRow> next(int maxRows) throws DatabaseServiceException {
+        List<DatabaseRow> rows = new ArrayList<DatabaseRow>(maxRows);
+        DatabaseRow row;
+        while (rows.size() < maxRows && (row = next()) != null) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close the result and its statement. Safe to call more than once.
+     * <p>
+     * A streaming driver reads and discards the rest of a result when it is closed, so a
+     * cursor closed before the end of its result cancels the query first.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!exhausted) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                logger.warn("Could not cancel the query: {}", e.getMessage());
+            }
+        }
+        try {
+            resultSet.close();
+        } catch (SQLException e) {
+            logger.warn("Could not close result set: {}", e.getMessage());
+        }
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.warn("Could not close statement: {}", e.getMessage());
+        }
+        try {
+            afterClose();
+        } catch (SQLException e) {
+            logger.warn("Could not end the cursor's session: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Called once the result and statement are closed, to undo whatever was done to the
+     * connection for the cursor.
+     * @throws SQLException
+     */
+    protected void afterClose() throws SQLException {
+    }
+
+}
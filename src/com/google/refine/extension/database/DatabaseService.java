@@ -30,40 +30,36 @@ package com.google.refine.extension.database;
 
 import java.sql.Connection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.refine.extension.database.mariadb.MariaDBDatabaseService;
 import com.google.refine.extension.database.model.DatabaseColumn;
 import com.google.refine.extension.database.model.DatabaseInfo;
 import com.google.refine.extension.database.model.DatabaseRow;
-import com.google.refine.extension.database.mysql.MySQLDatabaseService;
-import com.google.refine.extension.database.pgsql.PgSQLDatabaseService;
+import com.google.refine.extension.database.pool.ConnectionLease;
+import com.google.refine.extension.database.pool.ConnectionLeaseRegistry;
 
 public abstract class DatabaseService {
 
     private static final Logger logger = LoggerFactory.getLogger("DatabaseService");
     
     
+    /**
+     * The database services by type. Services are registered explicitly, or found through a
+     * {@link DatabaseServiceProvider} and created the first time their type is asked for, so
+     * only the drivers a deployment actually uses are loaded.
+     */
     public static class DBType {
         private static Map<String, DatabaseService> databaseServiceMap = new HashMap<String, DatabaseService>();
-        
-        static {
-            try {
+        private static Map<String, DatabaseServiceProvider> providerMap;
 
-                DatabaseService.DBType.registerDatabase(MySQLDatabaseService.DB_NAME, MySQLDatabaseService.getInstance());
-                DatabaseService.DBType.registerDatabase(PgSQLDatabaseService.DB_NAME, PgSQLDatabaseService.getInstance());
-                DatabaseService.DBType.registerDatabase(MariaDBDatabaseService.DB_NAME, MariaDBDatabaseService.getInstance());
-
-            } catch (Exception e) {
-                logger.error("Exception occurred while trying to prepare databases!", e);
-            }
-        }
-
-        public static void registerDatabase(String name, DatabaseService db) {
+        public static synchronized void registerDatabase(String name, DatabaseService db) {
               
             if (!databaseServiceMap.containsKey(name)) {
                 //throw new DatabaseServiceException(name + " cannot be registered. Database Type already exists");
@@ -78,8 +74,33 @@ public abstract class DatabaseService {
        
         }
 
-        public static DatabaseService getJdbcServiceFromType(String name) {
-            return databaseServiceMap.get(name);
+        public static synchronized DatabaseService getJdbcServiceFromType(String name) {
+            DatabaseService db = databaseServiceMap.get(name);
+            if (db == null) {
+                DatabaseServiceProvider provider = getProviders().get(name);
+                if (provider != null) {
+                    db = provider.getService();
+                    registerDatabase(name, db);
+                }
+            }
+            return db;
+        }
+
+        private static Map<String, DatabaseServiceProvider> getProviders() {
+            if (providerMap == null) {
+                providerMap = new HashMap<String, DatabaseServiceProvider>();
+                try {
+                    Iterator<DatabaseServiceProvider> providers = ServiceLoader
+                            .load(DatabaseServiceProvider.class, DatabaseService.class.getClassLoader()).iterator();
+                    while (providers.hasNext()) {
+                        DatabaseServiceProvider provider = providers.next();
+                        providerMap.put(provider.getName().toLowerCase(), provider);
+                    }
+                } catch (ServiceConfigurationError e) {
+                    logger.error("Exception occurred while trying to find database services!", e);
+                }
+            }
+            return providerMap;
         }
 
     }
@@ -99,7 +120,11 @@ public abstract class DatabaseService {
         logger.debug("get called on DatabaseService with, {}", dbType);
         DatabaseService databaseService = DatabaseService.DBType.getJdbcServiceFromType(dbType.toLowerCase());
         
-        logger.debug("DatabaseService found: {}", databaseService.getClass());
+        if (databaseService == null) {
+            logger.warn("No DatabaseService found for {}", dbType);
+        } else {
+            logger.debug("DatabaseService found: {}", databaseService.getClass());
+        }
         return databaseService;
        
     }
@@ -108,6 +133,18 @@ public abstract class DatabaseService {
     //Database Service APIs
     public abstract Connection getConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException;
     
+    public abstract Connection getConnection(DatabaseConfiguration dbConfig, SessionProfile profile) throws DatabaseServiceException;
+    
+    /**
+     * Get a connection for read-only work, from a replica of the database when the
+     * configuration lists any, see {@link com.google.refine.extension.database.pool.ReplicaRouter}.
+     * @param dbConfig
+     * @param profile the session profile, or null for the driver defaults
+     * @return
+     * @throws DatabaseServiceException
+     */
+    public abstract Connection getReadConnection(DatabaseConfiguration dbConfig, SessionProfile profile) throws DatabaseServiceException;
+    
     public abstract boolean testConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException;
 
     public abstract DatabaseInfo connect(DatabaseConfiguration dbConfig) throws  DatabaseServiceException;
@@ -121,5 +158,66 @@ public abstract class DatabaseService {
     public abstract List<DatabaseColumn> getColumns(DatabaseConfiguration dbConfig, String query) throws DatabaseServiceException;
     
     public abstract List<DatabaseRow> getRows(DatabaseConfiguration dbConfig, String query) throws DatabaseServiceException;
+    
+    public abstract List<DatabaseColumn> getColumns(Connection connection, String query) throws DatabaseServiceException;
+    
+    public abstract List<DatabaseRow> getRows(Connection connection, String query) throws DatabaseServiceException;
+    
+    /**
+     * Fetch one page of a query through a (cached) prepared statement.
+     * @param connection
+     * @param query
+     * @param limit
+     * @param offset
+     * @return
+     * @throws DatabaseServiceException
+     */
+    public abstract List<DatabaseRow> getRows(Connection connection, String query, int limit, int offset) throws DatabaseServiceException;
+    
+    /**
+     * Fetch one page of a query in the order of a key column, see
+     * {@link SqlDialect#buildKeysetQuery(String, String, boolean)}.
+     * @param connection
+     * @param query
+     * @param keyColumn a unique, non-null column of the query's result
+     * @param lastKey the key of the last row of the previous page, or null for the first page
+     * @param limit
+     * @return
+     * @throws DatabaseServiceException
+     */
+    public abstract List<DatabaseRow> getRowsAfter(Connection connection, String query, String keyColumn, Object lastKey, int limit) throws DatabaseServiceException;
+    
+    /**
+     * Run a query once and open its result for reading forward, a batch at a time, without
+     * holding the whole result in memory. The caller closes the cursor.
+     * @param connection
+     * @param query
+     * @param fetchSize the number of rows to fetch per round trip
+     * @return
+     * @throws DatabaseServiceException
+     */
+    public abstract DatabaseRowCursor openCursor(Connection connection, String query, int fetchSize) throws DatabaseServiceException;
+    
+    /**
+     * Estimate how many rows a query returns, without running it.
+     * @param connection
+     * @param query
+     * @return the estimate, or -1 when there is none
+     */
+    public abstract long estimateRowCount(Connection connection, String query);
+    
+    /**
+     * Lease a pooled connection to a single owner, such as an import job, until the lease is closed.
+     * The connection's session is set up once, at checkout, according to the configuration's
+     * session profile, or {@link SessionProfile#forImport()} when it has none.
+     * @param dbConfig
+     * @param owner
+     * @return
+     * @throws DatabaseServiceException
+     */
+    public ConnectionLease leaseConnection(DatabaseConfiguration dbConfig, String owner) throws DatabaseServiceException {
+        SessionProfile profile = dbConfig.getSessionProfile() != null ? dbConfig.getSessionProfile() : SessionProfile.forImport();
+        return ConnectionLeaseRegistry.getInstance().lease(owner, getReadConnection(dbConfig, profile));
+    }
 
 }
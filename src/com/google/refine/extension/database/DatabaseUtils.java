@@ -31,8 +31,10 @@ package com.google.refine.extension.database;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.JsonParseException;
@@ -54,6 +56,8 @@ public class DatabaseUtils {
     public final static String SAVED_CONNECTION_KEY = "savedConnections";
     
     private static SimpleTextEncryptor textEncryptor = new SimpleTextEncryptor("Aa1Gb@tY7_Y");
+
+    private static final String[] SECRET_PROPERTY_MARKERS = { "password", "passwd", "pwd", "secret", "token", "credential" };
     
     
     public static int getSavedConnectionsSize() {
@@ -167,6 +171,7 @@ public class DatabaseUtils {
              savedConnectionContainer.getSavedConnections().add(dbConfig);
              
              mapper.writerWithDefaultPrettyPrinter().writeValue(new File(savedConnectionFile), savedConnectionContainer);
+             SavedConnectionRegistry.getInstance().invalidate();
              
          } catch (JsonGenerationException e1) {
              logger.error("JsonGenerationException: {}", e1);
@@ -202,6 +207,7 @@ public class DatabaseUtils {
                  logger.debug("Size after delete SavedConnections :: {}", savedConnectionContainer.getSavedConnections().size());
              }
              mapper.writerWithDefaultPrettyPrinter().writeValue(new File(savedConnectionFile), savedConnectionContainer);
+             SavedConnectionRegistry.getInstance().invalidate();
              
          } catch (JsonGenerationException e1) {
              logger.error("JsonGenerationException: {}", e1);
@@ -248,6 +254,7 @@ public class DatabaseUtils {
                  logger.debug("Size after delete SavedConnections :: {}", savedConnectionContainer.getSavedConnections().size());
              }
              mapper.writerWithDefaultPrettyPrinter().writeValue(new File(savedConnectionFile), savedConnectionContainer);
+             SavedConnectionRegistry.getInstance().invalidate();
              
          } catch (JsonGenerationException e1) {
              logger.error("JsonGenerationException: {}", e1);
@@ -284,6 +291,17 @@ public class DatabaseUtils {
                  DatabaseConfiguration sc = (DatabaseConfiguration) savedConnArrayIter.next();
 
                  if (sc.getConnectionName().equals(jdbcConfig.getConnectionName())) {
+                     if (jdbcConfig.getSessionProfile() == null) {
+                         // not part of the edit form
+                         jdbcConfig.setSessionProfile(sc.getSessionProfile());
+                     }
+                     // secret driver properties are not shown in the edit form, keep those not entered again
+                     for (Map.Entry<String, String> entry : sc.getConnectionProperties().entrySet()) {
+                         if (isSecretProperty(entry.getKey())
+                                 && !jdbcConfig.getConnectionProperties().containsKey(entry.getKey())) {
+                             jdbcConfig.getConnectionProperties().put(entry.getKey(), entry.getValue());
+                         }
+                     }
                      savedConnArrayIter.remove();
                  }
 
@@ -293,6 +311,7 @@ public class DatabaseUtils {
              savedConnectionContainer.setSavedConnections(savedConnections);
           
              mapper.writerWithDefaultPrettyPrinter().writeValue(new File(savedConnectionFile), savedConnectionContainer);
+             SavedConnectionRegistry.getInstance().invalidate();
              
          } catch (JsonGenerationException e1) {
              logger.error("JsonGenerationException: {}", e1);
@@ -306,6 +325,134 @@ public class DatabaseUtils {
          }
      }
     
+    /**
+     * Parse driver properties entered as one {@code key=value} pair per line.
+     * Blank lines and lines starting with # are skipped.
+     * @param text
+     * @return the properties, in the order they were entered
+     */
+    public static Map<String, String> parseConnectionProperties(String text) {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        if (text == null) {
+            return properties;
+        }
+        for (String line : text.split("\\r?\\n")) {
+            String entry = line.trim();
+            if (entry.isEmpty() || entry.startsWith("#")) {
+                continue;
+            }
+            int eq = entry.indexOf('=');
+            String key = (eq < 0 ? entry : entry.substring(0, eq)).trim();
+            if (!key.isEmpty()) {
+                properties.put(key, eq < 0 ? "" : entry.substring(eq + 1).trim());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Format driver properties the way {@link #parseConnectionProperties(String)} reads them.
+     * @param properties
+     * @return
+     */
+    public static String formatConnectionProperties(Map<String, String> properties) {
+        StringBuilder sb = new StringBuilder();
+        if (properties != null) {
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(entry.getKey()).append('=').append(entry.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Whether a driver property holds a secret, such as sslpassword or trustStorePassword.
+     * @param key
+     * @return
+     */
+    public static boolean isSecretProperty(String key) {
+        String name = key.toLowerCase();
+        for (String marker : SECRET_PROPERTY_MARKERS) {
+            if (name.contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encrypt the values of driver properties, as the password is before it is saved.
+     * @param properties
+     * @return a copy with the values encrypted
+     */
+    public static Map<String, String> encryptConnectionProperties(Map<String, String> properties) {
+        Map<String, String> encrypted = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            String value = entry.getValue();
+            encrypted.put(entry.getKey(), (value == null || value.isEmpty()) ? value : encrypt(value));
+        }
+        return encrypted;
+    }
+
+    /**
+     * Decrypt the values of saved driver properties. Values that do not decrypt were
+     * saved in plain text and are kept as they are.
+     * @param properties
+     * @return a copy with the values decrypted
+     */
+    public static Map<String, String> decryptConnectionProperties(Map<String, String> properties) {
+        Map<String, String> decrypted = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            String value = entry.getValue();
+            if (value != null && !value.isEmpty()) {
+                try {
+                    value = decrypt(value);
+                } catch (RuntimeException e) {
+                    logger.debug("Connection property {} is not encrypted", entry.getKey());
+                }
+            }
+            decrypted.put(entry.getKey(), value);
+        }
+        return decrypted;
+    }
+
+    /**
+     * The driver properties that may be shown, without the secret ones.
+     * @param properties
+     * @return
+     */
+    public static Map<String, String> publicConnectionProperties(Map<String, String> properties) {
+        Map<String, String> shown = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (!isSecretProperty(entry.getKey())) {
+                shown.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return shown;
+    }
+
+    /**
+     * Parse a list of hosts, one host or host:port per line or separated by commas.
+     * @param text
+     * @return the hosts in input order, never null
+     */
+    public static List<String> parseHostList(String text) {
+        List<String> hosts = new ArrayList<String>();
+        if (text == null) {
+            return hosts;
+        }
+        for (String host : text.split("[,\\r\\n]+")) {
+            String entry = host.trim();
+            if (!entry.isEmpty()) {
+                hosts.add(entry);
+            }
+        }
+        return hosts;
+    }
+
     public static String getExtensionFilePath(){
         File dir = ((FileProjectManager) ProjectManager.singleton).getWorkspaceDir();
         String fileSep = System.getProperty("file.separator"); 
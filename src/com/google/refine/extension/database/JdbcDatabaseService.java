@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.model.DatabaseColumn;
+import com.google.refine.extension.database.model.DatabaseInfo;
+import com.google.refine.extension.database.model.DatabaseRow;
+import com.google.refine.extension.database.pool.ConnectionFactory;
+import com.google.refine.extension.database.pool.ConnectionPoolManager;
+import com.google.refine.extension.database.pool.ReplicaRouter;
+
+/**
+ * A database service that talks plain JDBC. Queries are run, and their rows read, the
+ * same way for every database; a vendor supplies the connections, through its
+ * {@link ConnectionFactory}, and whatever SQL differs, through its {@link SqlDialect}.
+ */
+public abstract class JdbcDatabaseService extends DatabaseService {
+
+    private static final Logger logger = LoggerFactory.getLogger("JdbcDatabaseService");
+
+    private static final int FETCH_SIZE = 10;
+
+    /**
+     * @return the factory that opens this database's physical connections
+     * @throws DatabaseServiceException
+     */
+    protected abstract ConnectionFactory getConnectionFactory() throws DatabaseServiceException;
+
+    public abstract SqlDialect getDialect();
+
+    /**
+     * The dialect to use on a connection; the same as {@link #getDialect()} unless the
+     * service handles more than one kind of database.
+     * @param connection
+     * @return
+     * @throws SQLException
+     */
+    protected SqlDialect getDialect(Connection connection) throws SQLException {
+        return getDialect();
+    }
+
+    @Override
+    public String getDatabaseUrl(DatabaseConfiguration dbConfig) {
+        return super.getDatabaseUrl(dbConfig) + "?useSSL=" + dbConfig.isUseSSL();
+    }
+
+    @Override
+    public Connection getConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException {
+        return ConnectionPoolManager.getInstance().getConnection(dbConfig, getConnectionFactory());
+    }
+
+    @Override
+    public Connection getConnection(DatabaseConfiguration dbConfig, SessionProfile profile)
+            throws DatabaseServiceException {
+        return ConnectionPoolManager.getInstance().getConnection(dbConfig, getConnectionFactory(), profile);
+    }
+
+    @Override
+    public Connection getReadConnection(DatabaseConfiguration dbConfig, SessionProfile profile)
+            throws DatabaseServiceException {
+        return ReplicaRouter.getInstance().getConnection(dbConfig, getConnectionFactory(), profile);
+    }
+
+    @Override
+    public boolean testConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException {
+        try (Connection connection = getConnection(dbConfig)) {
+            return connection != null;
+        } catch (SQLException e) {
+            logger.error("Test connection Failed!", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    @Override
+    public DatabaseInfo connect(DatabaseConfiguration dbConfig) throws DatabaseServiceException {
+        try (Connection connection = getConnection(dbConfig)) {
+            java.sql.DatabaseMetaData metadata = connection.getMetaData();
+
+            DatabaseInfo dbInfo = new DatabaseInfo();
+            dbInfo.setDatabaseMajorVersion(metadata.getDatabaseMajorVersion());
+            dbInfo.setDatabaseMinorVersion(metadata.getDatabaseMinorVersion());
+            dbInfo.setDatabaseProductVersion(metadata.getDatabaseProductVersion());
+            dbInfo.setDatabaseProductName(metadata.getDatabaseProductName());
+            return dbInfo;
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    @Override
+    public DatabaseInfo executeQuery(DatabaseConfiguration dbConfig, String query) throws DatabaseServiceException {
+        try (Connection connection = getReadConnection(dbConfig, null);
+                Statement statement = connection.createStatement();
+                ResultSet queryResult = statement.executeQuery(query)) {
+            DatabaseInfo dbInfo = new DatabaseInfo();
+            dbInfo.setColumns(readColumns(queryResult.getMetaData()));
+            dbInfo.setRows(readRows(queryResult));
+            return dbInfo;
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    @Override
+    public DatabaseInfo testQuery(DatabaseConfiguration dbConfig, String query) throws DatabaseServiceException {
+        try (Connection connection = getConnection(dbConfig);
+                Statement statement = connection.createStatement();
+                ResultSet queryResult = statement.executeQuery(query)) {
+            return new DatabaseInfo();
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    @Override
+    public String buildLimitQuery(Integer limit, Integer offset, String query) {
+        if(logger.isDebugEnabled()) {
+            logger.debug( "<<< original input query::{} >>>" , query );
+        }
+        String parsedQueryOut = getDialect().buildLimitQuery(limit, offset, query);
+        if(logger.isDebugEnabled()) {
+            logger.debug( "<<<Final input query::{} >>>" , parsedQueryOut );
+        }
+        return parsedQueryOut;
+    }
+
+    /**
+     * Wrap a query so one page of it can be fetched with a prepared statement, see
+     * {@link SqlDialect#bindPagedQuery(PreparedStatement, int, int)}. Unlike
+     * {@link #buildLimitQuery(Integer, Integer, String)} the SQL text is the same for every
+     * page, so the statement is prepared once per connection and reused for all batches.
+     * @param query
+     * @return
+     */
+    public String buildPagedQuery(String query) {
+        return getDialect().buildPagedQuery(query);
+    }
+
+    @Override
+    public List<DatabaseColumn> getColumns(DatabaseConfiguration dbConfig, String query) throws DatabaseServiceException {
+        try (Connection connection = getConnection(dbConfig)) {
+            return getColumns(connection, query);
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    /**
+     * The columns are read from the prepared statement, which most drivers describe without
+     * running the query. Otherwise the query is run for a single row.
+     */
+    @Override
+    public List<DatabaseColumn> getColumns(Connection connection, String query) throws DatabaseServiceException {
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            ResultSetMetaData metadata = null;
+            try {
+                metadata = statement.getMetaData();
+            } catch (SQLFeatureNotSupportedException e) {
+                // described below, from a one row result
+            }
+            if (metadata != null) {
+                return readColumns(metadata);
+            }
+            statement.setMaxRows(1);
+            try (ResultSet queryResult = statement.executeQuery()) {
+                return readColumns(queryResult.getMetaData());
+            }
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    @Override
+    public List<DatabaseRow> getRows(DatabaseConfiguration dbConfig, String query) throws DatabaseServiceException {
+        try (Connection connection = getConnection(dbConfig)) {
+            return getRows(connection, query);
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    @Override
+    public List<DatabaseRow> getRows(Connection connection, String query) throws DatabaseServiceException {
+        try (Statement statement = connection.createStatement()) {
+            getDialect(connection).configureFetch(statement, FETCH_SIZE);
+            try (ResultSet queryResult = statement.executeQuery(query)) {
+                return readRows(queryResult);
+            }
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    @Override
+    public List<DatabaseRow> getRows(Connection connection, String query, int limit, int offset) throws DatabaseServiceException {
+        try {
+            SqlDialect dialect = getDialect(connection);
+            try (PreparedStatement statement = connection.prepareStatement(dialect.buildPagedQuery(query))) {
+                dialect.bindPagedQuery(statement, limit, offset);
+                try (ResultSet queryResult = statement.executeQuery()) {
+                    return readRows(queryResult);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    @Override
+    public List<DatabaseRow> getRowsAfter(Connection connection, String query, String keyColumn, Object lastKey, int limit)
+            throws DatabaseServiceException {
+        try {
+            SqlDialect dialect = getDialect(connection);
+            try (PreparedStatement statement = connection.prepareStatement(dialect.buildKeysetQuery(query, keyColumn, lastKey != null))) {
+                dialect.bindKeysetQuery(statement, lastKey, limit);
+                try (ResultSet queryResult = statement.executeQuery()) {
+                    return readRows(queryResult, keyColumn);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    @Override
+    public DatabaseRowCursor openCursor(final Connection connection, String query, int fetchSize) throws DatabaseServiceException {
+        Statement statement = null;
+        SqlDialect dialect = null;
+        boolean streaming = false;
+        try {
+            dialect = getDialect(connection);
+            streaming = dialect.beginStreaming(connection);
+            statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            dialect.configureStreaming(statement, fetchSize);
+            ResultSet resultSet = statement.executeQuery(query);
+            if (!streaming) {
+                return new DatabaseRowCursor(statement, resultSet);
+            }
+            final SqlDialect streamingDialect = dialect;
+            return new DatabaseRowCursor(statement, resultSet) {
+                @Override
+                protected void afterClose() throws SQLException {
+                    streamingDialect.endStreaming(connection);
+                }
+            };
+        } catch (SQLException e) {
+            logger.error("SQLException::", e);
+            closeQuietly(statement);
+            if (streaming) {
+                try {
+                    dialect.endStreaming(connection);
+                } catch (SQLException ex) {
+                    logger.warn("Could not end streaming: {}", ex.getMessage());
+                }
+            }
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    /**
+     * An estimate is only used for progress reporting, so a database that refuses to
+     * explain the query gets -1 rather than an error.
+     */
+    @Override
+    public long estimateRowCount(Connection connection, String query) {
+        try {
+            return getDialect(connection).estimateRowCount(connection, query);
+        } catch (SQLException e) {
+            if(logger.isDebugEnabled()) {
+                logger.debug("Could not estimate the row count of {}: {}", query, e.getMessage());
+            }
+            return -1;
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.warn("Could not close statement: {}", e.getMessage());
+        }
+    }
+
+    protected static ArrayList<DatabaseColumn> readColumns(ResultSetMetaData metadata) throws SQLException {
+        int columnCount = metadata.getColumnCount();
+        ArrayList<DatabaseColumn> columns = new ArrayList<DatabaseColumn>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            columns.add(new DatabaseColumn(metadata.getColumnName(i), metadata.getColumnLabel(i),
+                    DatabaseUtils.getDbColumnType(metadata.getColumnType(i)), metadata.getColumnDisplaySize(i)));
+        }
+        return columns;
+    }
+
+    /**
+     * Read the rest of a result set as strings, one {@link DatabaseRow} per row.
+     */
+    protected static List<DatabaseRow> readRows(ResultSet queryResult) throws SQLException {
+        return readRows(queryResult, null);
+    }
+
+    /**
+     * Read the rest of a result set as strings, keeping the typed value of a key column
+     * as each row's {@link DatabaseRow#getKey()}.
+     * @param queryResult
+     * @param keyColumn the label of the key column, or null to keep no key
+     */
+    protected static List<DatabaseRow> readRows(ResultSet queryResult, String keyColumn) throws SQLException {
+        int columnCount = queryResult.getMetaData().getColumnCount();
+        int index = 0;
+        List<DatabaseRow> rows = new ArrayList<DatabaseRow>();
+        while (queryResult.next()) {
+            DatabaseRow row = new DatabaseRow();
+            row.setIndex(index);
+            List<String> values = new ArrayList<String>(columnCount);
+            for (int i = 1; i <= columnCount; i++) {
+                values.add(queryResult.getString(i));
+            }
+            row.setValues(values);
+            if (keyColumn != null) {
+                row.setKey(queryResult.getObject(keyColumn));
+            }
+            rows.add(row);
+            index++;
+        }
+        return rows;
+    }
+
+}
@@ -30,14 +30,19 @@ package com.google.refine.extension.database;
 
 
 
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 
 public final class SQLType {
 
     private static final Map<DriverContainer, SQLType> jdbcDriverRegistry = new HashMap<DriverContainer, SQLType>();
     private final DriverContainer driverContainer;
+    private volatile Driver driver;
 
     private SQLType(DriverContainer container) {
         this.driverContainer = container;
@@ -79,6 +84,50 @@ public final class SQLType {
         return this.driverContainer.useJDBCManager;
     }
 
+    /**
+     * The JDBC driver for this type, loaded once and then reused for every connection.
+     * @return
+     * @throws DatabaseServiceException if the driver class cannot be loaded
+     */
+    public Driver getDriver() throws DatabaseServiceException {
+        Driver result = driver;
+        if (result == null) {
+            synchronized (this) {
+                result = driver;
+                if (result == null) {
+                    try {
+                        Class<?> driverClass = Class.forName(getClassPath());
+                        result = (Driver) driverClass.getDeclaredConstructor().newInstance();
+                        driver = result;
+                    } catch (ClassNotFoundException e) {
+                        throw new DatabaseServiceException("Jdbc Driver not found: " + getClassPath());
+                    } catch (ReflectiveOperationException | ClassCastException e) {
+                        throw new DatabaseServiceException("Jdbc Driver could not be loaded: " + getClassPath());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Open a connection straight through the cached driver. Unlike DriverManager this
+     * takes no global lock and does not probe every registered driver, and timeouts are
+     * passed per connection in {@code info} instead of through the JVM-wide login timeout.
+     * @param url
+     * @param info driver properties, including user and password
+     * @return
+     * @throws SQLException
+     * @throws DatabaseServiceException if the driver cannot be loaded or does not accept the url
+     */
+    public Connection connect(String url, Properties info) throws SQLException, DatabaseServiceException {
+        Connection connection = getDriver().connect(url, info);
+        if (connection == null) {
+            throw new DatabaseServiceException("Jdbc Driver " + getClassPath() + " does not accept url " + url);
+        }
+        return connection;
+    }
+
     
     private static class DriverContainer {
 
@@ -97,5 +146,9 @@ public final class SQLType {
                     && ((DriverContainer) obj).identifier.equals(this.identifier)
                     && ((DriverContainer) obj).useJDBCManager == this.useJDBCManager;
         }
+
+        public final int hashCode() {
+            return identifier.hashCode() * 31 + classpath.hashCode();
+        }
     }
 }
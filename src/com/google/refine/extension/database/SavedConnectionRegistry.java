@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory view of the saved connections, with their passwords and driver properties
+ * decrypted, so commands can be given the name of a saved connection instead of its full
+ * settings. Every request naming the same saved connection gets the same {@link DatabaseConfiguration},
+ * which therefore must not be modified.
+ * <p>
+ * Loaded from the saved connections file on first use and reloaded after
+ * {@link DatabaseUtils} adds, edits or deletes a saved connection.
+ */
+public class SavedConnectionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger("SavedConnectionRegistry");
+
+    private static SavedConnectionRegistry instance;
+
+    private volatile Map<String, DatabaseConfiguration> connections;
+
+    SavedConnectionRegistry() {
+    }
+
+    public static synchronized SavedConnectionRegistry getInstance() {
+        if (instance == null) {
+            instance = new SavedConnectionRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * @param connectionName name of a saved connection, case insensitive
+     * @return the saved connection, or null if there is none with that name
+     */
+    public DatabaseConfiguration get(String connectionName) {
+        if (connectionName == null) {
+            return null;
+        }
+        Map<String, DatabaseConfiguration> loaded = connections;
+        if (loaded == null) {
+            loaded = load();
+        }
+        return loaded.get(connectionName.trim().toLowerCase());
+    }
+
+    /**
+     * Forget the loaded connections; the next lookup reads the file again.
+     */
+    public synchronized void invalidate() {
+        connections = null;
+    }
+
+    private synchronized Map<String, DatabaseConfiguration> load() {
+        if (connections != null) {
+            return connections;
+        }
+        Map<String, DatabaseConfiguration> loaded = new HashMap<String, DatabaseConfiguration>();
+        List<DatabaseConfiguration> saved = DatabaseUtils.getSavedConnections();
+        if (saved != null) {
+            for (DatabaseConfiguration dbConfig : saved) {
+                if (dbConfig.getConnectionName() == null) {
+                    continue;
+                }
+                if (dbConfig.getDatabasePassword() != null) {
+                    try {
+                        dbConfig.setDatabasePassword(DatabaseUtils.decrypt(dbConfig.getDatabasePassword()));
+                    } catch (RuntimeException e) {
+                        logger.warn("Password of saved connection {} could not be decrypted", dbConfig.getConnectionName());
+                    }
+                }
+                dbConfig.setConnectionProperties(DatabaseUtils.decryptConnectionProperties(dbConfig.getConnectionProperties()));
+                loaded.put(dbConfig.getConnectionName().trim().toLowerCase(), dbConfig);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Loaded {} saved connections", loaded.size());
+        }
+        connections = loaded;
+        return loaded;
+    }
+
+}
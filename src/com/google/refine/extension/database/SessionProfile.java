@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database;
+
+import java.sql.Connection;
+
+/**
+ * Session settings applied to a pooled connection when it is checked out, such as
+ * a read-only session for imports. Connections checked out without a profile get the
+ * driver defaults back.
+ */
+public class SessionProfile {
+
+    public static final String READ_UNCOMMITTED = "READ_UNCOMMITTED";
+    public static final String READ_COMMITTED = "READ_COMMITTED";
+    public static final String REPEATABLE_READ = "REPEATABLE_READ";
+    public static final String SERIALIZABLE = "SERIALIZABLE";
+
+    private boolean readOnly;
+    private String isolationLevel;
+
+    public SessionProfile() {
+    }
+
+    public SessionProfile(boolean readOnly, String isolationLevel) {
+        this.readOnly = readOnly;
+        this.isolationLevel = isolationLevel;
+    }
+
+    /**
+     * The profile used for imports and previews when the connection does not define one:
+     * a read-only, read-committed session, so large scans skip write bookkeeping and take
+     * the lightest locks.
+     * @return
+     */
+    public static SessionProfile forImport() {
+        return new SessionProfile(true, READ_COMMITTED);
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * @return one of the isolation level constants, or null to keep the driver default
+     */
+    public String getIsolationLevel() {
+        return isolationLevel;
+    }
+
+    public void setIsolationLevel(String isolationLevel) {
+        this.isolationLevel = isolationLevel;
+    }
+
+    /**
+     * Map an isolation level name to its {@link Connection} constant.
+     * @param isolationLevel
+     * @return the constant, or -1 for null or unknown names
+     */
+    public static int toJdbcIsolation(String isolationLevel) {
+        if (isolationLevel == null) {
+            return -1;
+        }
+        switch (isolationLevel.trim().toUpperCase().replace(' ', '_')) {
+        case READ_UNCOMMITTED:
+            return Connection.TRANSACTION_READ_UNCOMMITTED;
+        case READ_COMMITTED:
+            return Connection.TRANSACTION_READ_COMMITTED;
+        case REPEATABLE_READ:
+            return Connection.TRANSACTION_REPEATABLE_READ;
+        case SERIALIZABLE:
+            return Connection.TRANSACTION_SERIALIZABLE;
+        default:
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SessionProfile)) {
+            return false;
+        }
+        SessionProfile other = (SessionProfile) obj;
+        return readOnly == other.readOnly && toJdbcIsolation(isolationLevel) == toJdbcIsolation(other.isolationLevel);
+    }
+
+    @Override
+    public int hashCode() {
+        return (readOnly ? 31 : 0) + toJdbcIsolation(isolationLevel);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionProfile [readOnly=" + readOnly + ", isolationLevel=" + isolationLevel + "]";
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The vendor specific SQL of a {@link JdbcDatabaseService}: how a query is paged, how a
+ * statement is set up to fetch large results, and how the size of a result is estimated.
+ * The defaults are the standard LIMIT / OFFSET forms that PostgreSQL, MySQL and MariaDB
+ * all accept.
+ */
+public interface SqlDialect {
+
+    /**
+     * Append a literal limit and offset to a query.
+     * @param limit the maximum number of rows, or null for no limit
+     * @param offset the number of rows to skip, or null to start at the first row
+     * @param query
+     * @return
+     */
+    default String buildLimitQuery(Integer limit, Integer offset, String query) {
+        final int len = query.length();
+        String parsedQuery = len > 0 && query.endsWith(";") ?  query.substring(0, len - 1) : query;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(parsedQuery);
+
+        if(limit != null) {
+            sb.append(" LIMIT" + " " + limit);
+        }
+
+        if(offset != null) {
+            sb.append(" OFFSET" + " " + offset);
+        }
+        sb.append(";");
+        return sb.toString();
+    }
+
+    /**
+     * Wrap a query so one page of it can be fetched with a prepared statement.
+     * @param query
+     * @return
+     */
+    default String buildPagedQuery(String query) {
+        return stripTerminator(query) + " LIMIT ? OFFSET ?";
+    }
+
+    /**
+     * Bind the page of a query built by {@link #buildPagedQuery(String)}.
+     * @param statement
+     * @param limit
+     * @param offset
+     * @throws SQLException
+     */
+    default void bindPagedQuery(PreparedStatement statement, int limit, int offset) throws SQLException {
+        statement.setInt(1, limit);
+        statement.setInt(2, offset);
+    }
+
+    /**
+     * Wrap a query so it can be read in pages ordered by a key column, each page starting
+     * after the last key of the one before. Unlike an offset, the key lets an index find
+     * the start of every page, so a deep page costs as much as the first.
+     * @param query
+     * @param keyColumn the name of a unique, non-null column of the query's result
+     * @param after false for the first page, which has no key to start after
+     * @return
+     */
+    default String buildKeysetQuery(String query, String keyColumn, boolean after) {
+        String key = quoteIdentifier(keyColumn);
+        return "SELECT * FROM (" + stripTerminator(query) + ") keyset_page"
+                + (after ? " WHERE " + key + " > ?" : "")
+                + " ORDER BY " + key + " LIMIT ?";
+    }
+
+    /**
+     * Bind a page of a query built by {@link #buildKeysetQuery(String, String, boolean)}.
+     * @param statement
+     * @param lastKey the last key of the previous page, as the driver typed it, or null for the first page
+     * @param limit
+     * @throws SQLException
+     */
+    default void bindKeysetQuery(PreparedStatement statement, Object lastKey, int limit) throws SQLException {
+        int index = 1;
+        if (lastKey != null) {
+            statement.setObject(index++, lastKey);
+        }
+        statement.setInt(index, limit);
+    }
+
+    /**
+     * Set a statement up to fetch a result a few rows at a time, before it is executed.
+     * @param statement
+     * @param fetchSize the number of rows to fetch per round trip
+     * @throws SQLException
+     */
+    default void configureFetch(Statement statement, int fetchSize) throws SQLException {
+        statement.setFetchSize(fetchSize);
+    }
+
+    /**
+     * Set up the statement of a cursor, which reads a whole result once, before it is
+     * executed. Only {@link DatabaseService#openCursor} statements come here, so a dialect
+     * may stream in ways that tie up the connection until the result is closed.
+     * @param statement a forward-only, read-only statement
+     * @param fetchSize the number of rows to fetch per round trip
+     * @throws SQLException
+     */
+    default void configureStreaming(Statement statement, int fetchSize) throws SQLException {
+        configureFetch(statement, fetchSize);
+    }
+
+    /**
+     * Prepare a connection for reading a result through a cursor, before the query is run.
+     * Databases whose drivers only fetch in batches inside a transaction start one here.
+     * @param connection
+     * @return true if the connection was changed and {@link #endStreaming(Connection)} must
+     *         put it back once the cursor is closed
+     * @throws SQLException
+     */
+    default boolean beginStreaming(Connection connection) throws SQLException {
+        return false;
+    }
+
+    /**
+     * Undo {@link #beginStreaming(Connection)}, after the cursor is closed.
+     * @param connection
+     * @throws SQLException
+     */
+    default void endStreaming(Connection connection) throws SQLException {
+    }
+
+    /**
+     * Estimate the number of rows a query returns from the planner's statistics, without
+     * running it.
+     * @param connection
+     * @param query
+     * @return the estimate, or -1 when the database cannot tell
+     * @throws SQLException
+     */
+    default long estimateRowCount(Connection connection, String query) throws SQLException {
+        return -1;
+    }
+
+    /**
+     * Quote a table or column name.
+     * @param identifier
+     * @return
+     */
+    default String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Trim a query and drop its closing semicolon, so it can be wrapped in a larger statement.
+     * @param query
+     * @return
+     */
+    static String stripTerminator(String query) {
+        String parsedQuery = query.trim();
+        if (parsedQuery.endsWith(";")) {
+            parsedQuery = parsedQuery.substring(0, parsedQuery.length() - 1);
+        }
+        return parsedQuery;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.cmd;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.http.HttpStatus;
+import org.json.JSONException;
+import org.json.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.pool.ActiveStatementRegistry;
+import com.google.refine.extension.database.pool.ActiveStatementRegistry.ActiveStatement;
+import com.google.refine.extension.database.pool.ConnectionLease;
+import com.google.refine.extension.database.pool.ConnectionLeaseRegistry;
+
+/**
+ * Lists the statements running on pooled connections (GET), and cancels one of them
+ * (POST with its id).
+ */
+public class ActiveQueriesCommand extends DatabaseCommand {
+
+    private static final Logger logger = LoggerFactory.getLogger("ActiveQueriesCommand");
+
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        // owner of each leased connection, e.g. the import job
+        Map<Object, String> owners = new IdentityHashMap<Object, String>();
+        for (ConnectionLease lease : ConnectionLeaseRegistry.getInstance().getLeases()) {
+            owners.put(lease.getConnection(), lease.getOwner());
+        }
+
+        try {
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Content-Type", "application/json");
+            response.setStatus(HttpStatus.SC_OK);
+            Writer w = response.getWriter();
+            JSONWriter writer = new JSONWriter(w);
+
+            writer.object();
+            writer.key("code");
+            writer.value("ok");
+            writer.key("activeQueries");
+            writer.array();
+            for (ActiveStatement statement : ActiveStatementRegistry.getInstance().getActiveStatements()) {
+                writer.object();
+                writer.key("id");
+                writer.value(statement.getId());
+                writer.key("owner");
+                writer.value(owners.get(statement.getConnection()));
+                writer.key("connection");
+                writer.value(statement.getConnectionName());
+                writer.key("sql");
+                writer.value(statement.getSql());
+                writer.key("elapsed");
+                writer.value(statement.getElapsed());
+                writer.key("rowsFetched");
+                writer.value(statement.getRowsFetched());
+                writer.key("cancelled");
+                writer.value(statement.isCancelled());
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+            w.flush();
+            w.close();
+        } catch (JSONException e) {
+            logger.error("ActiveQueriesCommand::Get::JSONException::{}", e);
+            throw new ServletException(e);
+        }
+    }
+
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        long id;
+        try {
+            id = Long.parseLong(request.getParameter("id"));
+        } catch (NumberFormatException nfe) {
+            response.sendError(HttpStatus.SC_BAD_REQUEST, "Missing or invalid statement id");
+            return;
+        }
+
+        try {
+            boolean cancelled = ActiveStatementRegistry.getInstance().cancel(id);
+
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Content-Type", "application/json");
+            response.setStatus(HttpStatus.SC_OK);
+            Writer w = response.getWriter();
+            JSONWriter writer = new JSONWriter(w);
+            writer.object();
+            writer.key("code");
+            writer.value("ok");
+            writer.key("cancelled");
+            writer.value(cancelled);
+            writer.endObject();
+            w.flush();
+            w.close();
+        } catch (SQLException e) {
+            logger.error("ActiveQueriesCommand::Post::SQLException::{}", e);
+            response.sendError(HttpStatus.SC_BAD_REQUEST, e.getMessage());
+        } catch (JSONException e) {
+            logger.error("ActiveQueriesCommand::Post::JSONException::{}", e);
+            throw new ServletException(e);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.cmd;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.http.HttpStatus;
+import org.json.JSONException;
+import org.json.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.pool.CircuitBreaker;
+import com.google.refine.extension.database.pool.ConnectionPoolManager;
+
+/**
+ * Reports the circuit breaker of every database host the extension has talked to.
+ */
+public class CircuitBreakerCommand extends DatabaseCommand {
+
+    private static final Logger logger = LoggerFactory.getLogger("CircuitBreakerCommand");
+
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        try {
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Content-Type", "application/json");
+            response.setStatus(HttpStatus.SC_OK);
+            Writer w = response.getWriter();
+            JSONWriter writer = new JSONWriter(w);
+
+            writer.object();
+            writer.key("code");
+            writer.value("ok");
+            writer.key("circuitBreakers");
+            writer.array();
+            for (CircuitBreaker breaker : ConnectionPoolManager.getInstance().getCircuitBreakers()) {
+                writer.object();
+                writer.key("host");
+                writer.value(breaker.getHost());
+                writer.key("state");
+                writer.value(breaker.getState().name());
+                writer.key("failures");
+                writer.value(breaker.getFailures());
+                writer.key("rejected");
+                writer.value(breaker.getRejected());
+                writer.key("retryIn");
+                writer.value(breaker.getRetryIn());
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+            w.flush();
+            w.close();
+        } catch (JSONException e) {
+            logger.error("CircuitBreakerCommand::Get::JSONException::{}", e);
+            throw new ServletException(e);
+        }
+    }
+
+}
@@ -56,7 +56,7 @@ public class ConnectCommand extends DatabaseCommand {
     public void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         
-        DatabaseConfiguration databaseConfiguration = getJdbcConfiguration(request);
+        DatabaseConfiguration databaseConfiguration = resolveJdbcConfiguration(request);
         if(logger.isDebugEnabled()) {
             logger.debug("ConnectCommand::Post::{}", databaseConfiguration);
         }
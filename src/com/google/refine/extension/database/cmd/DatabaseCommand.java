@@ -33,6 +33,7 @@ import java.io.IOException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.json.JSONException;
 import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,11 +41,32 @@ import org.slf4j.LoggerFactory;
 import com.google.refine.commands.Command;
 import com.google.refine.extension.database.DatabaseConfiguration;
 import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.DatabaseUtils;
+import com.google.refine.extension.database.SavedConnectionRegistry;
 
 public abstract class DatabaseCommand extends Command {
     
     private static final Logger logger = LoggerFactory.getLogger("DatabaseCommand");
 
+    /**
+     * The saved connection named by the savedConnection parameter, or else the
+     * configuration given by the other request parameters.
+     * A saved connection is shared between requests and must not be modified.
+     * @param request
+     * @return
+     */
+    protected DatabaseConfiguration resolveJdbcConfiguration(HttpServletRequest request) {
+        String savedConnection = request.getParameter("savedConnection");
+        if(savedConnection != null && !savedConnection.trim().isEmpty()) {
+            DatabaseConfiguration saved = SavedConnectionRegistry.getInstance().get(savedConnection);
+            if(saved != null) {
+                return saved;
+            }
+            logger.warn("Saved connection {} not found, using the request parameters", savedConnection);
+        }
+        return getJdbcConfiguration(request);
+    }
+
     /**
      * 
      * @param request
@@ -68,6 +90,17 @@ public abstract class DatabaseCommand extends Command {
         jdbcConfig.setDatabasePassword(request.getParameter("databasePassword"));
         jdbcConfig.setDatabaseName(request.getParameter("initialDatabase"));
         jdbcConfig.setDatabaseSchema(request.getParameter("initialSchema"));
+        jdbcConfig.setConnectionProperties(
+                DatabaseUtils.parseConnectionProperties(request.getParameter("connectionProperties")));
+        jdbcConfig.setReplicaHosts(DatabaseUtils.parseHostList(request.getParameter("replicaHosts")));
+        jdbcConfig.setJdbcUrl(request.getParameter("jdbcUrl"));
+        jdbcConfig.setDriverClass(request.getParameter("driverClass"));
+        String maxReplicaLag = request.getParameter("maxReplicaLag");
+        if(maxReplicaLag != null && !maxReplicaLag.trim().isEmpty()) {
+            try {
+                jdbcConfig.setMaxReplicaLag(Integer.parseInt(maxReplicaLag.trim()));
+            }catch(NumberFormatException nfe) {}
+        }
         
         if(logger.isDebugEnabled()) {
             logger.debug("JDBC Configuration: {}", jdbcConfig);
@@ -86,6 +119,10 @@ public abstract class DatabaseCommand extends Command {
             throws  IOException {
         
        //logger.info("sendError::{}", writer);
+       if (response.isCommitted()) {
+           writeError(writer, e.getMessage());
+           return;
+       }
        response.sendError(status, e.getMessage());
 
     }
@@ -109,8 +146,32 @@ public abstract class DatabaseCommand extends Command {
         
         message = message + e.getMessage();
     
+        if (response.isCommitted()) {
+            writeError(writer, e.getMessage());
+            return;
+        }
         response.sendError(status, e.getMessage());
 
     }
 
+    /**
+     * Once part of the body has been sent, see {@link QueryWatchdog}, the status can no
+     * longer change, so the error goes into the JSON body instead.
+     * @param writer
+     * @param message
+     * @throws IOException
+     */
+    private void writeError(JSONWriter writer, String message) throws IOException {
+        try {
+            writer.object();
+            writer.key("code");
+            writer.value("error");
+            writer.key("message");
+            writer.value(message);
+            writer.endObject();
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
 }
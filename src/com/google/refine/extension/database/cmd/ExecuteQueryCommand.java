@@ -30,6 +30,7 @@ package com.google.refine.extension.database.cmd;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.concurrent.Callable;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -57,8 +58,8 @@ public class ExecuteQueryCommand extends DatabaseCommand {
             throws ServletException, IOException {
         
         
-        DatabaseConfiguration databaseConfiguration = getJdbcConfiguration(request);
-        String query = request.getParameter("queryString");
+        final DatabaseConfiguration databaseConfiguration = resolveJdbcConfiguration(request);
+        final String query = request.getParameter("queryString");
         if(logger.isDebugEnabled()) {
             logger.debug("QueryCommand::Post::DatabaseConfiguration::{}::Query::{} " ,databaseConfiguration, query);
         }
@@ -72,8 +73,13 @@ public class ExecuteQueryCommand extends DatabaseCommand {
             JSONWriter writer = new JSONWriter(w);
             
             try {
-                DatabaseInfo databaseInfo = DatabaseService.get(databaseConfiguration.getDatabaseType())
-                        .executeQuery(databaseConfiguration, query);
+                // cancelled when the client goes away before the query finishes
+                DatabaseInfo databaseInfo = QueryWatchdog.run(new Callable<DatabaseInfo>() {
+                    @Override
+                    public DatabaseInfo call() throws DatabaseServiceException {
+                        return DatabaseService.get(databaseConfiguration.getDatabaseType()).executeQuery(databaseConfiguration, query);
+                    }
+                }, response);
                 ObjectMapper mapperObj = new ObjectMapper();
                
                 response.setStatus(HttpStatus.SC_OK);
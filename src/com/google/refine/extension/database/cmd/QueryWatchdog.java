@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.cmd;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseModuleImpl;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.pool.ActiveStatementRegistry;
+import com.google.refine.extension.database.pool.ActiveStatementRegistry.ActiveStatement;
+
+/**
+ * Runs the database work of a request on a worker thread while the request thread
+ * watches the client. When the request times out, or the client has gone away, the
+ * statements the worker is executing are cancelled, so an abandoned query stops using
+ * the database and gives its pooled connection back.
+ * <p>
+ * A servlet only learns that the client is gone when it writes to it, so while the work
+ * runs a space, which JSON parsers skip, is written and flushed every check interval.
+ * Work that finishes within the first interval leaves the response untouched.
+ * <p>
+ * A driver may ignore the cancel. Once query.cancelGracePeriod ms have passed since the
+ * first cancel the work is abandoned: its thread is interrupted and the request returns,
+ * while the thread keeps its connection until the driver gives up.
+ */
+public class QueryWatchdog {
+
+    private static final Logger logger = LoggerFactory.getLogger("QueryWatchdog");
+    private static final int DEFAULT_REQUEST_TIMEOUT = 300000;
+    private static final int DEFAULT_CHECK_INTERVAL = 2000;
+    private static final int DEFAULT_CANCEL_GRACE_PERIOD = 10000;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "database-query-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private QueryWatchdog() {
+    }
+
+    /**
+     * @param work the database work; its statements are cancelled if the request is abandoned
+     * @param response the response of the request, written to only to find out whether the client is still there
+     * @return the result of the work
+     * @throws DatabaseServiceException if the work failed or was cancelled
+     */
+    public static <T> T run(final Callable<T> work, HttpServletResponse response) throws DatabaseServiceException {
+        return run(work, response,
+                DatabaseModuleImpl.getIntProperty("query.requestTimeout", DEFAULT_REQUEST_TIMEOUT),
+                Math.max(100, DatabaseModuleImpl.getIntProperty("query.disconnectCheckInterval", DEFAULT_CHECK_INTERVAL)),
+                DatabaseModuleImpl.getIntProperty("query.cancelGracePeriod", DEFAULT_CANCEL_GRACE_PERIOD));
+    }
+
+    /**
+     * @param timeout milliseconds before the work is cancelled, 0 for no limit
+     * @param interval milliseconds between two checks of the client
+     * @param gracePeriod milliseconds the work has to stop once cancelled, before it is abandoned
+     */
+    static <T> T run(final Callable<T> work, HttpServletResponse response, int timeout, int interval, int gracePeriod)
+            throws DatabaseServiceException {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+        final AtomicReference<Thread> worker = new AtomicReference<Thread>();
+        Future<T> future = executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                worker.set(Thread.currentThread());
+                try {
+                    return work.call();
+                } finally {
+                    worker.set(null);
+                }
+            }
+        });
+
+        String reason = null;
+        long abandonAt = Long.MAX_VALUE;
+        while (true) {
+            try {
+                return future.get(interval, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (reason != null && System.currentTimeMillis() >= abandonAt) {
+                    logger.warn("Abandoning a query that did not stop within {}ms of being cancelled", gracePeriod);
+                    future.cancel(true);
+                    throw new DatabaseServiceException("Query cancelled, " + reason
+                            + ", and abandoned as the database did not stop it");
+                }
+                if (reason == null) {
+                    if (System.currentTimeMillis() >= deadline) {
+                        reason = "the request timed out after " + timeout + "ms";
+                    } else if (!isClientConnected(response)) {
+                        reason = "the client disconnected";
+                    }
+                    if (reason != null) {
+                        abandonAt = System.currentTimeMillis() + gracePeriod;
+                    }
+                }
+                if (reason != null) {
+                    // again on every check, in case the worker was still waiting for a connection
+                    cancel(worker.get(), reason);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(worker.get(), "the request was interrupted");
+                throw new DatabaseServiceException("Query cancelled, the request was interrupted");
+            } catch (ExecutionException e) {
+                if (reason != null) {
+                    throw new DatabaseServiceException("Query cancelled, " + reason);
+                }
+                Throwable cause = e.getCause();
+                if (cause instanceof DatabaseServiceException) {
+                    throw (DatabaseServiceException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new DatabaseServiceException(String.valueOf(cause.getMessage()));
+            }
+        }
+    }
+
+    private static boolean isClientConnected(HttpServletResponse response) {
+        try {
+            PrintWriter writer = response.getWriter();
+            writer.write(' ');
+            writer.flush();
+            return !writer.checkError();
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private static void cancel(Thread thread, String reason) {
+        if (thread == null) {
+            return;
+        }
+        ActiveStatementRegistry registry = ActiveStatementRegistry.getInstance();
+        for (ActiveStatement statement : registry.getActiveStatements(thread)) {
+            if (statement.isCancelled()) {
+                continue;
+            }
+            logger.warn("Cancelling query because {}", reason);
+            try {
+                registry.cancel(statement.getId());
+            } catch (SQLException e) {
+                logger.warn("Statement {} could not be cancelled: {}", statement.getId(), e.getMessage());
+            }
+        }
+    }
+
+}
@@ -161,6 +161,22 @@ public class SavedConnectionCommand extends DatabaseCommand {
             writer.key("databaseUser");
             writer.value(savedConnection.getDatabaseUser());
 
+            writer.key("connectionProperties");
+            writer.value(DatabaseUtils.formatConnectionProperties(DatabaseUtils.publicConnectionProperties(
+                    DatabaseUtils.decryptConnectionProperties(savedConnection.getConnectionProperties()))));
+
+            writer.key("replicaHosts");
+            writer.value(String.join("\n", savedConnection.getReplicaHosts()));
+
+            writer.key("maxReplicaLag");
+            writer.value(savedConnection.getMaxReplicaLag());
+
+            writer.key("jdbcUrl");
+            writer.value(savedConnection.getJdbcUrl());
+
+            writer.key("driverClass");
+            writer.value(savedConnection.getDriverClass());
+
             writer.endObject();
             writer.endArray();
             
@@ -226,6 +242,22 @@ public class SavedConnectionCommand extends DatabaseCommand {
                 writer.key("databaseUser");
                 writer.value(dbConfig.getDatabaseUser());
 
+                writer.key("connectionProperties");
+                writer.value(DatabaseUtils.formatConnectionProperties(DatabaseUtils.publicConnectionProperties(
+                    DatabaseUtils.decryptConnectionProperties(dbConfig.getConnectionProperties()))));
+
+                writer.key("replicaHosts");
+                writer.value(String.join("\n", dbConfig.getReplicaHosts()));
+
+                writer.key("maxReplicaLag");
+                writer.value(dbConfig.getMaxReplicaLag());
+
+                writer.key("jdbcUrl");
+                writer.value(dbConfig.getJdbcUrl());
+
+                writer.key("driverClass");
+                writer.value(dbConfig.getDriverClass());
+
                 writer.endObject();
 
             }
@@ -260,6 +292,12 @@ public class SavedConnectionCommand extends DatabaseCommand {
             response.flushBuffer();
             return;
         }
+        if(jdbcConfig.getJdbcUrl() != null && !jdbcConfig.getJdbcUrl().trim().isEmpty()
+                && !jdbcConfig.getReplicaHosts().isEmpty()) {
+            response.sendError(HttpStatus.SC_BAD_REQUEST, "Read Replicas cannot be used with a JDBC URL");
+            response.flushBuffer();
+            return;
+        }
      
         DatabaseConfiguration savedConn = DatabaseUtils.getSavedConnection(jdbcConfig.getConnectionName());
         if(savedConn != null) {
@@ -273,6 +311,7 @@ public class SavedConnectionCommand extends DatabaseCommand {
             //logger.debug("SavedConnectionCommand::Post::password::{}", jdbcConfig.getDatabasePassword());
            jdbcConfig.setDatabasePassword(DatabaseUtils.encrypt(jdbcConfig.getDatabasePassword()));
         }
+        jdbcConfig.setConnectionProperties(DatabaseUtils.encryptConnectionProperties(jdbcConfig.getConnectionProperties()));
         
         DatabaseUtils.addToSavedConnections(jdbcConfig);
 
@@ -306,7 +345,8 @@ public class SavedConnectionCommand extends DatabaseCommand {
             sb.append("Connection Name, ");
             error = true;
         }
-        if(jdbcConfig.getDatabaseHost() == null) {
+        boolean hasUrl = jdbcConfig.getJdbcUrl() != null && !jdbcConfig.getJdbcUrl().trim().isEmpty();
+        if(jdbcConfig.getDatabaseHost() == null && !hasUrl) {
             sb.append("Database Host, ");
             error = true;
         }
@@ -314,10 +354,15 @@ public class SavedConnectionCommand extends DatabaseCommand {
             sb.append("Database User, ");
             error = true;
         }
-        if(jdbcConfig.getDatabaseName() == null) {
+        if(jdbcConfig.getDatabaseName() == null && !hasUrl) {
             sb.append("Database Name, ");
             error = true;
         }
+        if(hasUrl && !jdbcConfig.getReplicaHosts().isEmpty()) {
+            logger.info("Read replicas given for JDBC URL connection {}", jdbcConfig.getConnectionName());
+            response.sendError(HttpStatus.SC_BAD_REQUEST, "Read Replicas cannot be used with a JDBC URL");
+            return;
+        }
         if(error) {
             sb.append(" is missing");
             logger.info("Connection Parameter errors::{}", sb.toString());
@@ -331,6 +376,7 @@ public class SavedConnectionCommand extends DatabaseCommand {
         if(jdbcConfig.getDatabasePassword() != null) {
             jdbcConfig.setDatabasePassword(DatabaseUtils.encrypt(jdbcConfig.getDatabasePassword()));
          }
+        jdbcConfig.setConnectionProperties(DatabaseUtils.encryptConnectionProperties(jdbcConfig.getConnectionProperties()));
         
         DatabaseUtils.editSavedConnections(jdbcConfig);
        
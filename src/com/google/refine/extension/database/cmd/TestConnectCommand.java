@@ -40,6 +40,7 @@ import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.refine.extension.database.ConnectionTestCache;
 import com.google.refine.extension.database.DatabaseConfiguration;
 import com.google.refine.extension.database.DatabaseService;
 import com.google.refine.extension.database.DatabaseServiceException;
@@ -55,7 +56,7 @@ public class TestConnectCommand extends DatabaseCommand {
             throws ServletException, IOException {
         
         
-        DatabaseConfiguration databaseConfiguration = getJdbcConfiguration(request);
+        DatabaseConfiguration databaseConfiguration = resolveJdbcConfiguration(request);
         if(logger.isDebugEnabled()) {
             logger.debug("TestConnectCommand::Post::{}", databaseConfiguration); 
         }
@@ -73,8 +74,8 @@ public class TestConnectCommand extends DatabaseCommand {
             
             try {
                 
-                boolean connectionTestResult = DatabaseService.get(databaseConfiguration.getDatabaseType())
-                        .testConnection(databaseConfiguration);
+                boolean connectionTestResult = ConnectionTestCache.getInstance().testConnection(databaseConfiguration,
+                        DatabaseService.get(databaseConfiguration.getDatabaseType()));
                 
                 response.setStatus(HttpStatus.SC_OK);
                 writer.object();
@@ -30,6 +30,7 @@ package com.google.refine.extension.database.cmd;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.concurrent.Callable;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -56,8 +57,8 @@ public class TestQueryCommand extends DatabaseCommand {
     public void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
        
-        DatabaseConfiguration dbConfig = getJdbcConfiguration(request);
-        String query = request.getParameter("query");
+        final DatabaseConfiguration dbConfig = resolveJdbcConfiguration(request);
+        final String query = request.getParameter("query");
         
         if(logger.isDebugEnabled()) {
             logger.debug("TestQueryCommand::Post::DatabaseConfiguration::{}::Query::{} " ,dbConfig, query);
@@ -73,8 +74,13 @@ public class TestQueryCommand extends DatabaseCommand {
             JSONWriter writer = new JSONWriter(w);
             
             try {
-                DatabaseInfo databaseInfo = DatabaseService.get(dbConfig.getDatabaseType())
-                        .testQuery(dbConfig, query);
+                // cancelled when the client goes away before the query finishes
+                DatabaseInfo databaseInfo = QueryWatchdog.run(new Callable<DatabaseInfo>() {
+                    @Override
+                    public DatabaseInfo call() throws DatabaseServiceException {
+                        return DatabaseService.get(dbConfig.getDatabaseType()).testQuery(dbConfig, query);
+                    }
+                }, response);
                 ObjectMapper mapperObj = new ObjectMapper();
                
                 response.setStatus(HttpStatus.SC_OK);
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.generic;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.SQLType;
+import com.google.refine.extension.database.pool.CircuitBreaker;
+import com.google.refine.extension.database.pool.ConnectionFactory;
+import com.google.refine.extension.database.pool.ConnectionPoolKey;
+import com.google.refine.extension.database.pool.ConnectionPoolManager;
+
+/**
+ * Opens connections from a raw JDBC URL, through the driver class of the configuration
+ * or, when it names none, through whichever JDBC 4 driver in {@code MOD-INF/lib}
+ * accepts the URL.
+ */
+public class GenericJdbcConnectionManager implements ConnectionFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger("GenericJdbcConnectionManager");
+
+    private static GenericJdbcConnectionManager instance;
+
+    // by sub-protocol, such as "jdbc:h2"
+    private final Map<String, Driver> discoveredDrivers = new ConcurrentHashMap<String, Driver>();
+
+    private GenericJdbcConnectionManager() {
+    }
+
+    public static synchronized GenericJdbcConnectionManager getInstance() {
+        if (instance == null) {
+            instance = new GenericJdbcConnectionManager();
+        }
+        return instance;
+    }
+
+    @Override
+    public Connection createConnection(DatabaseConfiguration databaseConfiguration) throws DatabaseServiceException {
+        String url = databaseConfiguration.getJdbcUrl();
+        if (url == null || url.trim().isEmpty()) {
+            throw new DatabaseServiceException("No JDBC URL given");
+        }
+        url = url.trim();
+
+        Properties info = new Properties();
+        info.putAll(databaseConfiguration.getConnectionProperties());
+        if (databaseConfiguration.getDatabaseUser() != null && !databaseConfiguration.getDatabaseUser().isEmpty()) {
+            info.setProperty("user", databaseConfiguration.getDatabaseUser());
+        }
+        if (databaseConfiguration.getDatabasePassword() != null && !databaseConfiguration.getDatabasePassword().isEmpty()) {
+            info.setProperty("password", databaseConfiguration.getDatabasePassword());
+        }
+
+        Driver driver = getDriver(databaseConfiguration.getDriverClass(), url);
+        // the URL names a single server, guarded by the breaker of its host key
+        CircuitBreaker breaker = ConnectionPoolManager.getInstance()
+                .getCircuitBreaker(new ConnectionPoolKey(databaseConfiguration).getHostKey());
+        breaker.acquire();
+        Connection connection;
+        try {
+            connection = driver.connect(url, info);
+        } catch (SQLException e) {
+            if (CircuitBreaker.isConnectionFailure(e)) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordIgnored();
+            }
+            logger.error("SQLException::Couldn't get a Connection!", e);
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        } catch (RuntimeException e) {
+            breaker.recordIgnored();
+            throw e;
+        }
+        if (connection == null) {
+            breaker.recordIgnored();
+            throw new DatabaseServiceException("Jdbc Driver does not accept url " + url);
+        }
+        breaker.recordSuccess();
+        if(logger.isDebugEnabled()) {
+            logger.debug("*** Opened New  connection for ::{} **** ", url);
+        }
+        return connection;
+    }
+
+    /**
+     * @param driverClass the driver class, or null or empty to find one for the url
+     * @param url
+     * @return
+     * @throws DatabaseServiceException when no driver can be loaded
+     */
+    Driver getDriver(String driverClass, String url) throws DatabaseServiceException {
+        if (driverClass != null && !driverClass.trim().isEmpty()) {
+            driverClass = driverClass.trim();
+            SQLType.registerSQLDriver(driverClass, driverClass);
+            return SQLType.forName(driverClass).getDriver();
+        }
+
+        String subProtocol = getSubProtocol(url);
+        Driver driver = discoveredDrivers.get(subProtocol);
+        if (driver == null) {
+            driver = findDriver(url);
+            discoveredDrivers.put(subProtocol, driver);
+        }
+        return driver;
+    }
+
+    private static Driver findDriver(String url) throws DatabaseServiceException {
+        try {
+            // the module class loader, which sees the driver jars of MOD-INF/lib
+            Iterator<Driver> drivers = ServiceLoader.load(Driver.class,
+                    GenericJdbcConnectionManager.class.getClassLoader()).iterator();
+            while (drivers.hasNext()) {
+                try {
+                    Driver driver = drivers.next();
+                    if (driver.acceptsURL(url)) {
+                        return driver;
+                    }
+                } catch (ServiceConfigurationError | SQLException e) {
+                    if(logger.isDebugEnabled()) {
+                        logger.debug("Skipping JDBC driver: {}", e.getMessage());
+                    }
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            logger.error("Exception occurred while trying to find JDBC drivers!", e);
+        }
+        throw new DatabaseServiceException("No Jdbc Driver found for url " + getSubProtocol(url));
+    }
+
+    static String getSubProtocol(String url) {
+        int first = url.indexOf(':');
+        int second = first < 0 ? -1 : url.indexOf(':', first + 1);
+        return second < 0 ? url : url.substring(0, second);
+    }
+
+}
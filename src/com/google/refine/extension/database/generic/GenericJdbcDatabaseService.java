@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.generic;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.JdbcDatabaseService;
+import com.google.refine.extension.database.SqlDialect;
+import com.google.refine.extension.database.mariadb.MariaDBDialect;
+import com.google.refine.extension.database.mysql.MySQLDialect;
+import com.google.refine.extension.database.pgsql.PgSQLDialect;
+import com.google.refine.extension.database.pool.ConnectionFactory;
+
+/**
+ * Any database with a JDBC driver in {@code MOD-INF/lib}, reached through a raw JDBC URL.
+ * The dialect is picked per connection from the product name the driver reports, so
+ * paging and fetching use the same pooled import path as the built-in databases.
+ */
+public class GenericJdbcDatabaseService extends JdbcDatabaseService {
+
+    private static final Logger logger = LoggerFactory.getLogger("GenericJdbcDatabaseService");
+
+    public static final String DB_NAME = "jdbc";
+
+    private static final SqlDialect LIMIT_OFFSET = new SqlDialect() {};
+    private static final SqlDialect OFFSET_FETCH = new OffsetFetchDialect();
+
+    private static GenericJdbcDatabaseService instance;
+
+    private final Map<String, SqlDialect> dialects = new ConcurrentHashMap<String, SqlDialect>();
+
+    private GenericJdbcDatabaseService() {
+    }
+
+    public static synchronized GenericJdbcDatabaseService getInstance() {
+        if (instance == null) {
+            instance = new GenericJdbcDatabaseService();
+            if(logger.isDebugEnabled()) {
+                logger.debug("GenericJdbcDatabaseService Instance: {}", instance);
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    protected ConnectionFactory getConnectionFactory() throws DatabaseServiceException {
+        return GenericJdbcConnectionManager.getInstance();
+    }
+
+    /**
+     * The dialect used when there is no connection to ask, the standard OFFSET / FETCH.
+     */
+    @Override
+    public SqlDialect getDialect() {
+        return OFFSET_FETCH;
+    }
+
+    @Override
+    protected SqlDialect getDialect(Connection connection) throws SQLException {
+        String productName = connection.getMetaData().getDatabaseProductName();
+        SqlDialect dialect = dialects.get(productName);
+        if (dialect == null) {
+            dialect = detectDialect(productName);
+            dialects.put(productName, dialect);
+            logger.info("Using {} for {}", dialect.getClass().getSimpleName(), productName);
+        }
+        return dialect;
+    }
+
+    /**
+     * @param productName as reported by {@link java.sql.DatabaseMetaData#getDatabaseProductName()}
+     * @return
+     */
+    static SqlDialect detectDialect(String productName) {
+        String name = productName == null ? "" : productName.toLowerCase();
+        if (name.contains("postgresql")) {
+            return new PgSQLDialect();
+        }
+        if (name.contains("mariadb")) {
+            return new MariaDBDialect();
+        }
+        if (name.contains("mysql")) {
+            return new MySQLDialect();
+        }
+        if (name.equals("h2") || name.startsWith("hsql") || name.contains("sqlite")) {
+            return LIMIT_OFFSET;
+        }
+        // Derby, Oracle, DB2, SQL Server and anything unknown: the SQL standard form
+        return OFFSET_FETCH;
+    }
+
+    @Override
+    public String getDatabaseUrl(DatabaseConfiguration dbConfig) {
+        return dbConfig.getJdbcUrl();
+    }
+
+}
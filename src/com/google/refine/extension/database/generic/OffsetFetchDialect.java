@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.generic;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import com.google.refine.extension.database.SqlDialect;
+
+/**
+ * The SQL:2008 OFFSET / FETCH form of paging, for databases without LIMIT, such as
+ * Derby, Oracle 12c+, DB2 and SQL Server 2012+. SQL Server only accepts it after an
+ * ORDER BY clause.
+ */
+public class OffsetFetchDialect implements SqlDialect {
+
+    @Override
+    public String buildLimitQuery(Integer limit, Integer offset, String query) {
+        StringBuilder sb = new StringBuilder(SqlDialect.stripTerminator(query));
+        if (offset != null) {
+            sb.append(" OFFSET " + offset + " ROWS");
+        }
+        if (limit != null) {
+            sb.append(" FETCH " + (offset != null ? "NEXT " : "FIRST ") + limit + " ROWS ONLY");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String buildPagedQuery(String query) {
+        return SqlDialect.stripTerminator(query) + " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+    }
+
+    @Override
+    public void bindPagedQuery(PreparedStatement statement, int limit, int offset) throws SQLException {
+        statement.setInt(1, offset);
+        statement.setInt(2, limit);
+    }
+
+    @Override
+    public String buildKeysetQuery(String query, String keyColumn, boolean after) {
+        String key = quoteIdentifier(keyColumn);
+        return "SELECT * FROM (" + SqlDialect.stripTerminator(query) + ") keyset_page"
+                + (after ? " WHERE " + key + " > ?" : "")
+                + " ORDER BY " + key + " OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+    }
+
+}
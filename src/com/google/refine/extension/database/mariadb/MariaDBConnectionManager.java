@@ -29,22 +29,32 @@
 package com.google.refine.extension.database.mariadb;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseModuleImpl;
 import com.google.refine.extension.database.DatabaseServiceException;
 import com.google.refine.extension.database.SQLType;
+import com.google.refine.extension.database.SessionProfile;
+import com.google.refine.extension.database.pool.ConnectionFactory;
+import com.google.refine.extension.database.pool.ConnectionPoolManager;
+import com.google.refine.extension.database.pool.HostAddress;
+import com.google.refine.extension.database.pool.ParallelConnector;
+import com.google.refine.extension.database.pool.ReplicaRouter;
 
 
 
-public class MariaDBConnectionManager {
+public class MariaDBConnectionManager implements ConnectionFactory {
 
     private static final Logger logger = LoggerFactory.getLogger("MariaDBConnectionManager");
-    private Connection connection; 
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10;
     private SQLType type;
 
     private static MariaDBConnectionManager instance;
@@ -99,7 +109,7 @@ public class MariaDBConnectionManager {
         try {
                 boolean connResult = false;
               
-                Connection conn = getConnection(databaseConfiguration, true);
+                Connection conn = getConnection(databaseConfiguration);
                 if(conn != null) {
                     connResult = true;
                     conn.close();
@@ -116,70 +126,136 @@ public class MariaDBConnectionManager {
     }
 
     /**
-     * Get a connection form the connection pool.
+     * Get a connection from the connection pool. Closing it returns it to the pool.
+     *
+     * @return connection from the pool
+     */
+    public Connection getConnection(DatabaseConfiguration databaseConfiguration) throws DatabaseServiceException {
+        return ConnectionPoolManager.getInstance().getConnection(databaseConfiguration, this);
+    }
+
+    /**
+     * Get a connection from the connection pool, with its session set up according to a profile.
+     *
+     * @return connection from the pool
+     */
+    public Connection getConnection(DatabaseConfiguration databaseConfiguration, SessionProfile profile) throws DatabaseServiceException {
+        return ConnectionPoolManager.getInstance().getConnection(databaseConfiguration, this, profile);
+    }
+
+    /**
+     * Get a connection for read-only work, from the least loaded healthy replica when
+     * the configuration lists replicas.
+     *
+     * @return connection from the pool
+     */
+    public Connection getReadConnection(DatabaseConfiguration databaseConfiguration, SessionProfile profile) throws DatabaseServiceException {
+        return ReplicaRouter.getInstance().getConnection(databaseConfiguration, this, profile);
+    }
+
+    /**
+     * Get a connection from the connection pool. Pooled connections are validated
+     * before they are handed out, so forceNewConnection is no longer needed and is ignored.
      *
      * @return connection from the pool
      */
     public  Connection getConnection(DatabaseConfiguration databaseConfiguration, boolean forceNewConnection) throws DatabaseServiceException{
+        return getConnection(databaseConfiguration);
+    }
+
+    /**
+     * Open a new physical connection for the pool.
+     */
+    @Override
+    public Connection createConnection(DatabaseConfiguration databaseConfiguration) throws DatabaseServiceException {
         try {
+            final DatabaseConfiguration dbConfig = databaseConfiguration;
+            int connectTimeout = DatabaseModuleImpl.getIntProperty("connect.timeout", DEFAULT_CONNECT_TIMEOUT);
+
+            final Properties info = new Properties();
+            // milliseconds
+            info.setProperty("connectTimeout", String.valueOf(connectTimeout * 1000));
+            // driver properties of the connection override the defaults above
+            info.putAll(databaseConfiguration.getConnectionProperties());
+            if (databaseConfiguration.getDatabaseUser() != null) {
+                info.setProperty("user", databaseConfiguration.getDatabaseUser());
+            }
+            if (databaseConfiguration.getDatabasePassword() != null) {
+                info.setProperty("password", databaseConfiguration.getDatabasePassword());
+            }
 
-           // logger.info("connection::{}, forceNewConnection: {}", connection, forceNewConnection);
+            // the host field may list several hosts, tried in order
+            List<HostAddress> hosts = HostAddress.parseList(databaseConfiguration.getDatabaseHost(),
+                    databaseConfiguration.getDatabasePort());
+            return ParallelConnector.getInstance().connect(hosts, new ParallelConnector.HostConnector() {
+                @Override
+                public Connection connect(HostAddress address) throws SQLException, DatabaseServiceException {
+                    String dbURL = getDatabaseUrl(dbConfig, address);
+                    Connection connection = type.connect(dbURL, info);
 
-            if (connection != null && !forceNewConnection) {
-               // logger.debug("connection closed::{}", connection.isClosed());
-                if (!connection.isClosed()) {
                     if(logger.isDebugEnabled()) {
-                        logger.debug("Returning existing connection::{}", connection);
+                        logger.debug("*** Opened New  connection for ::{} **** ", dbURL); 
                     }
-                    
-                    
                     return connection;
                 }
-            }
-
-            Class.forName(type.getClassPath());
-            DriverManager.setLoginTimeout(10);
-            String dbURL = getDatabaseUrl(databaseConfiguration);
-            connection = DriverManager.getConnection(dbURL, databaseConfiguration.getDatabaseUser(),
-                    databaseConfiguration.getDatabasePassword());
-
-            if(logger.isDebugEnabled()) {
-                logger.debug("*** Acquired New  connection for ::{} **** ", dbURL); 
-            }
-            
+            });
 
-            return connection;
-
-            
-        } catch (ClassNotFoundException e) {
-            logger.error("Jdbc Driver not found", e);
-            throw new DatabaseServiceException(e.getMessage());
         } catch (SQLException e) {
             logger.error("SQLException::Couldn't get a Connection!", e);
             throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
         } 
     }
 
- 
-    public  void shutdown() {
+    /**
+     * Read-only transactions let InnoDB skip transaction id assignment and undo bookkeeping.
+     * Servers older than 10.0 do not know the statement; they simply keep read-write sessions.
+     */
+    @Override
+    public void applySessionSettings(Connection connection, SessionProfile profile) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET SESSION TRANSACTION "
+                    + (profile != null && profile.isReadOnly() ? "READ ONLY" : "READ WRITE"));
+        } catch (SQLException e) {
+            logger.warn("Read-only session not supported by the server: {}", e.getMessage());
+        }
+    }
 
-        if (connection != null) {
-            try {
-                connection.close();
-            }
-            catch (SQLException e) {
-                logger.warn("Non-Managed connection could not be closed. Whoops!", e);
+    /**
+     * MariaDB schemas are databases: the driver switches with {@code USE}, and falls back to
+     * the database of the connection when no schema is given.
+     */
+    @Override
+    public void applySchema(Connection connection, DatabaseConfiguration dbConfig, String schema) throws SQLException {
+        connection.setCatalog(schema != null ? schema : dbConfig.getDatabaseName());
+    }
+
+    /**
+     * Seconds_Behind_Master of the replica; 0 when the server does not replicate, and
+     * never caught up while replication is stopped.
+     */
+    @Override
+    public long getReplicationLag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SHOW SLAVE STATUS")) {
+            if (!rs.next()) {
+                return 0;
             }
+            long lag = rs.getLong("Seconds_Behind_Master");
+            return rs.wasNull() ? Long.MAX_VALUE : lag;
         }
- 
     }
-    
 
-   
-    private static String getDatabaseUrl(DatabaseConfiguration dbConfig) {
+    /**
+     * Close all pooled MariaDB connections.
+     */
+    public  void shutdown() {
+        ConnectionPoolManager.getInstance().shutdown(MariaDBDatabaseService.DB_NAME);
+    }
+    
+    private static String getDatabaseUrl(DatabaseConfiguration dbConfig, HostAddress address) {
        
-            int port = dbConfig.getDatabasePort();
-            return "jdbc:" + dbConfig.getDatabaseType().toLowerCase() + "://" + dbConfig.getDatabaseHost()
+            int port = address.getPort();
+            return "jdbc:" + dbConfig.getDatabaseType().toLowerCase() + "://" + address.getHost()
                     + ((port == 0) ? "" : (":" + port)) + "/" + dbConfig.getDatabaseName();
         
     }
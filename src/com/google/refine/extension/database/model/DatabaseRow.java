@@ -35,6 +35,8 @@ public class DatabaseRow {
     private int index;
     
     private List<String> values;
+    
+    private Object key;
 
     
     public int getIndex() {
@@ -55,6 +57,19 @@ public class DatabaseRow {
     public void setValues(List<String> values) {
         this.values = values;
     }
+
+    /**
+     * @return the typed value of the column a keyset page is ordered by, or null when the
+     *         row was not read by key
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    
+    public void setKey(Object key) {
+        this.key = key;
+    }
     
     
     
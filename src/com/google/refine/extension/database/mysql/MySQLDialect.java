@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.mysql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.google.refine.extension.database.DatabaseModuleImpl;
+import com.google.refine.extension.database.SqlDialect;
+
+/**
+ * MySQL's SQL dialect.
+ */
+public class MySQLDialect implements SqlDialect {
+
+    /**
+     * Whether connections are opened with the driver's useCursorFetch option, which reads
+     * results through a server side cursor, a fetch size at a time.
+     * @return
+     */
+    public static boolean isCursorFetch() {
+        return DatabaseModuleImpl.getBooleanProperty("mysql.useCursorFetch", false);
+    }
+
+    /**
+     * Connector/J reads the whole result into memory unless it is told otherwise. With
+     * useCursorFetch it honours the fetch size; without it, a forward-only, read-only
+     * statement with a fetch size of {@link Integer#MIN_VALUE} streams the result one row
+     * at a time. No other statement can run on the connection until that result is closed,
+     * which is why only cursors stream this way.
+     */
+    @Override
+    public void configureStreaming(Statement statement, int fetchSize) throws SQLException {
+        if (isCursorFetch()) {
+            statement.setFetchSize(fetchSize);
+        } else {
+            statement.setFetchSize(Integer.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Reads the row estimate of the first table in the query plan, the one the
+     * rest of the query is driven from.
+     */
+    @Override
+    public long estimateRowCount(Connection connection, String query) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet plan = statement.executeQuery("EXPLAIN " + SqlDialect.stripTerminator(query))) {
+            if (plan.next()) {
+                long rows = plan.getLong("rows");
+                return plan.wasNull() ? -1 : rows;
+            }
+            return -1;
+        }
+    }
+
+    @Override
+    public String quoteIdentifier(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+}
@@ -29,22 +29,32 @@
 package com.google.refine.extension.database.pgsql;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseModuleImpl;
 import com.google.refine.extension.database.DatabaseServiceException;
 import com.google.refine.extension.database.SQLType;
+import com.google.refine.extension.database.SessionProfile;
+import com.google.refine.extension.database.pool.ConnectionFactory;
+import com.google.refine.extension.database.pool.ConnectionPoolManager;
+import com.google.refine.extension.database.pool.HostAddress;
+import com.google.refine.extension.database.pool.ParallelConnector;
+import com.google.refine.extension.database.pool.ReplicaRouter;
 
 
 
-public class PgSQLConnectionManager {
+public class PgSQLConnectionManager implements ConnectionFactory {
 
     private static final Logger logger = LoggerFactory.getLogger("PgSQLConnectionManager");
-    private Connection connection; 
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10;
     private SQLType type;
 
     private static PgSQLConnectionManager instance;
@@ -104,7 +114,7 @@ public class PgSQLConnectionManager {
         try {
                 boolean connResult = false;
               
-                Connection conn = getConnection(databaseConfiguration, true);
+                Connection conn = getConnection(databaseConfiguration);
                 if(conn != null) {
                     connResult = true;
                     conn.close();
@@ -121,64 +131,138 @@ public class PgSQLConnectionManager {
     }
 
     /**
-     * Get a connection form the connection pool.
+     * Get a connection from the connection pool. Closing it returns it to the pool.
+     *
+     * @return connection from the pool
+     */
+    public Connection getConnection(DatabaseConfiguration databaseConfiguration) throws DatabaseServiceException {
+        return ConnectionPoolManager.getInstance().getConnection(databaseConfiguration, this);
+    }
+
+    /**
+     * Get a connection from the connection pool, with its session set up according to a profile.
+     *
+     * @return connection from the pool
+     */
+    public Connection getConnection(DatabaseConfiguration databaseConfiguration, SessionProfile profile) throws DatabaseServiceException {
+        return ConnectionPoolManager.getInstance().getConnection(databaseConfiguration, this, profile);
+    }
+
+    /**
+     * Get a connection for read-only work, from the least loaded healthy replica when
+     * the configuration lists replicas.
+     *
+     * @return connection from the pool
+     */
+    public Connection getReadConnection(DatabaseConfiguration databaseConfiguration, SessionProfile profile) throws DatabaseServiceException {
+        return ReplicaRouter.getInstance().getConnection(databaseConfiguration, this, profile);
+    }
+
+    /**
+     * Get a connection from the connection pool. Pooled connections are validated
+     * before they are handed out, so forceNewConnection is no longer needed and is ignored.
      *
      * @return connection from the pool
      */
     public  Connection getConnection(DatabaseConfiguration databaseConfiguration, boolean forceNewConnection) throws DatabaseServiceException{
+        return getConnection(databaseConfiguration);
+    }
+
+    /**
+     * Open a new physical connection for the pool.
+     */
+    @Override
+    public Connection createConnection(DatabaseConfiguration databaseConfiguration) throws DatabaseServiceException {
         try {
+            final DatabaseConfiguration dbConfig = databaseConfiguration;
+            int connectTimeout = DatabaseModuleImpl.getIntProperty("connect.timeout", DEFAULT_CONNECT_TIMEOUT);
+
+            final Properties info = new Properties();
+            // seconds
+            info.setProperty("loginTimeout", String.valueOf(connectTimeout));
+            info.setProperty("connectTimeout", String.valueOf(connectTimeout));
+            // driver properties of the connection override the defaults above
+            info.putAll(databaseConfiguration.getConnectionProperties());
+            if (databaseConfiguration.getDatabaseUser() != null) {
+                info.setProperty("user", databaseConfiguration.getDatabaseUser());
+            }
+            if (databaseConfiguration.getDatabasePassword() != null) {
+                info.setProperty("password", databaseConfiguration.getDatabasePassword());
+            }
 
-           // logger.info("connection::{}, forceNewConnection: {}", connection, forceNewConnection);
+            // the host field may list several hosts, tried in order
+            List<HostAddress> hosts = HostAddress.parseList(databaseConfiguration.getDatabaseHost(),
+                    databaseConfiguration.getDatabasePort());
+            return ParallelConnector.getInstance().connect(hosts, new ParallelConnector.HostConnector() {
+                @Override
+                public Connection connect(HostAddress address) throws SQLException, DatabaseServiceException {
+                    String dbURL = getDatabaseUrl(dbConfig, address);
+                    Connection connection = type.connect(dbURL, info);
 
-            if (connection != null && !forceNewConnection) {
-               // logger.info("connection closed::{}", connection.isClosed());
-                if (!connection.isClosed()) {
-                    if(logger.isDebugEnabled()){
-                        logger.debug("Returning existing connection::{}", connection); 
+                    if(logger.isDebugEnabled()) {
+                        logger.debug("*** Opened New  connection for ::{} **** ", dbURL); 
                     }
                     return connection;
                 }
-            }
+            });
 
-            Class.forName(type.getClassPath());
-            DriverManager.setLoginTimeout(10);
-            String dbURL = getDatabaseUrl(databaseConfiguration);
-            connection = DriverManager.getConnection(dbURL, databaseConfiguration.getDatabaseUser(),
-                    databaseConfiguration.getDatabasePassword());
-
-            logger.debug("*** Acquired New  connection for ::{} **** ", dbURL);
-
-            return connection;
-
-            
-        } catch (ClassNotFoundException e) {
-            logger.error("Jdbc Driver not found", e);
-            throw new DatabaseServiceException(e.getMessage());
         } catch (SQLException e) {
             logger.error("SQLException::Couldn't get a Connection!", e);
             throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
         } 
     }
 
- 
-    public  void shutdown() {
+    /**
+     * PostgreSQL ignores the JDBC read-only flag outside explicit transactions, so make
+     * every transaction of the session read-only on the server.
+     */
+    @Override
+    public void applySessionSettings(Connection connection, SessionProfile profile) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET SESSION default_transaction_read_only = "
+                    + (profile != null && profile.isReadOnly() ? "on" : "off"));
+        }
+    }
 
-        if (connection != null) {
-            try {
-                connection.close();
-            }
-            catch (SQLException e) {
-                logger.warn("Non-Managed connection could not be closed. Whoops!", e);
+    /**
+     * Resolve unqualified names in the initial schema first, so queries and catalog
+     * lookups do not need to qualify every table.
+     */
+    @Override
+    public void applySchema(Connection connection, DatabaseConfiguration dbConfig, String schema) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (schema == null) {
+                statement.execute("RESET search_path");
+            } else {
+                statement.execute("SET search_path TO \"" + schema.replace("\"", "\"\"") + "\"");
             }
         }
- 
     }
-  
-   
-    private static String getDatabaseUrl(DatabaseConfiguration dbConfig) {
+
+    /**
+     * Time since the last replayed transaction on a standby; 0 on a primary.
+     */
+    @Override
+    public long getReplicationLag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT CASE WHEN pg_is_in_recovery()"
+                        + " THEN COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)"
+                        + " ELSE 0 END")) {
+            return rs.next() ? (long) rs.getDouble(1) : -1;
+        }
+    }
+
+    /**
+     * Close all pooled PostgreSQL connections.
+     */
+    public  void shutdown() {
+        ConnectionPoolManager.getInstance().shutdown(PgSQLDatabaseService.DB_NAME);
+    }
+    
+    private static String getDatabaseUrl(DatabaseConfiguration dbConfig, HostAddress address) {
        
-            int port = dbConfig.getDatabasePort();
-            return "jdbc:" + dbConfig.getDatabaseType().toLowerCase() + "://" + dbConfig.getDatabaseHost()
+            int port = address.getPort();
+            return "jdbc:" + dbConfig.getDatabaseType().toLowerCase() + "://" + address.getHost()
                     + ((port == 0) ? "" : (":" + port)) + "/" + dbConfig.getDatabaseName();
         
     }
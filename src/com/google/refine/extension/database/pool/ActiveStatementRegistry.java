@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Every statement currently executing, or whose results are still being read, on a
+ * pooled connection. Entries are added and removed by {@link ResourceTracker}.
+ */
+public class ActiveStatementRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger("ActiveStatementRegistry");
+
+    private static ActiveStatementRegistry instance;
+
+    private final Map<Long, ActiveStatement> active = new ConcurrentHashMap<Long, ActiveStatement>();
+    private final AtomicLong ids = new AtomicLong();
+
+    ActiveStatementRegistry() {
+    }
+
+    public static synchronized ActiveStatementRegistry getInstance() {
+        if (instance == null) {
+            instance = new ActiveStatementRegistry();
+        }
+        return instance;
+    }
+
+    ActiveStatement start(String connectionName, Object connection, String sql, Statement statement) {
+        ActiveStatement entry = new ActiveStatement(ids.incrementAndGet(), connectionName, connection, sql, statement);
+        active.put(entry.getId(), entry);
+        return entry;
+    }
+
+    void finish(ActiveStatement entry) {
+        active.remove(entry.getId());
+    }
+
+    /**
+     * @return the active statements, longest running first
+     */
+    public List<ActiveStatement> getActiveStatements() {
+        List<ActiveStatement> statements = new ArrayList<ActiveStatement>(active.values());
+        Collections.sort(statements, new Comparator<ActiveStatement>() {
+            @Override
+            public int compare(ActiveStatement a, ActiveStatement b) {
+                return Long.compare(a.getStartedAt(), b.getStartedAt());
+            }
+        });
+        return statements;
+    }
+
+    /**
+     * @param thread
+     * @return the active statements executed by a thread
+     */
+    public List<ActiveStatement> getActiveStatements(Thread thread) {
+        List<ActiveStatement> statements = new ArrayList<ActiveStatement>();
+        for (ActiveStatement entry : active.values()) {
+            if (entry.thread == thread) {
+                statements.add(entry);
+            }
+        }
+        return statements;
+    }
+
+    public ActiveStatement get(long id) {
+        return active.get(id);
+    }
+
+    /**
+     * Ask the database to stop a statement. The borrower sees the statement fail and
+     * cleans up as for any other SQL error.
+     * @param id
+     * @return false if no such statement is active any more
+     * @throws SQLException if the driver could not cancel it
+     */
+    public boolean cancel(long id) throws SQLException {
+        ActiveStatement entry = active.get(id);
+        if (entry == null) {
+            return false;
+        }
+        logger.warn("Cancelling statement {} on {} after {}ms: {}", id, entry.getConnectionName(),
+                entry.getElapsed(), entry.getSql());
+        entry.cancel();
+        return true;
+    }
+
+    public static class ActiveStatement {
+
+        private final long id;
+        private final String connectionName;
+        private final Object connection;
+        private final String sql;
+        private final Statement statement;
+        private final Thread thread;
+        private final long startedAt;
+        private final AtomicLong rowsFetched = new AtomicLong();
+        private volatile boolean cancelled;
+
+        ActiveStatement(long id, String connectionName, Object connection, String sql, Statement statement) {
+            this.id = id;
+            this.connectionName = connectionName;
+            this.connection = connection;
+            this.sql = sql;
+            this.statement = statement;
+            this.thread = Thread.currentThread();
+            this.startedAt = System.currentTimeMillis();
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * The pool the statement runs on, without credentials.
+         */
+        public String getConnectionName() {
+            return connectionName;
+        }
+
+        /**
+         * The connection handed to the borrower, to match against {@link ConnectionLease#getConnection()}.
+         */
+        public Object getConnection() {
+            return connection;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public long getElapsed() {
+            return System.currentTimeMillis() - startedAt;
+        }
+
+        public long getRowsFetched() {
+            return rowsFetched.get();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        void rowFetched() {
+            rowsFetched.incrementAndGet();
+        }
+
+        void cancel() throws SQLException {
+            cancelled = true;
+            statement.cancel();
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseModuleImpl;
+import com.google.refine.extension.database.DatabaseServiceException;
+
+/**
+ * Stops calls to a database host that keeps failing to connect, so they fail at once
+ * instead of each holding a thread for the login timeout.
+ * <p>
+ * After {@code failureThreshold} connection failures in a row the breaker opens and
+ * rejects every call for {@code openTime} ms. Then it lets {@code halfOpenTrials} calls
+ * through: one success closes it again, one failure opens it for another period.
+ * Only connection failures (SQL state class 08) count; a wrong query or password
+ * says nothing about the health of the host.
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger("CircuitBreaker");
+
+    // connection rejected, as the breaker does while it is open
+    private static final String REJECTED_STATE = "08004";
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final int DEFAULT_OPEN_TIME = 30000;
+    private static final int DEFAULT_HALF_OPEN_TRIALS = 1;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String host;
+    private final int failureThreshold;
+    private final long openTime;
+    private final int halfOpenTrials;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private int trials;
+    private long rejected;
+
+    public CircuitBreaker(String host, int failureThreshold, long openTime, int halfOpenTrials) {
+        this.host = host;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openTime = openTime;
+        this.halfOpenTrials = Math.max(1, halfOpenTrials);
+    }
+
+    /**
+     * A breaker for one host, set up from the circuit.* settings.
+     * @param host
+     * @return
+     */
+    public static CircuitBreaker forHost(String host) {
+        return new CircuitBreaker(host,
+                DatabaseModuleImpl.getIntProperty("circuit.failureThreshold", DEFAULT_FAILURE_THRESHOLD),
+                DatabaseModuleImpl.getIntProperty("circuit.openTime", DEFAULT_OPEN_TIME),
+                DatabaseModuleImpl.getIntProperty("circuit.halfOpenTrials", DEFAULT_HALF_OPEN_TRIALS));
+    }
+
+    /**
+     * Whether an exception means the host could not be reached.
+     * @param e
+     * @return
+     */
+    public static boolean isConnectionFailure(DatabaseServiceException e) {
+        return e.getSqlState() != null && e.getSqlState().startsWith("08");
+    }
+
+    /**
+     * Whether an exception comes from an open breaker, rather than from the host.
+     * @param e
+     * @return
+     */
+    public static boolean isRejection(DatabaseServiceException e) {
+        return REJECTED_STATE.equals(e.getSqlState());
+    }
+
+    public static boolean isConnectionFailure(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    /**
+     * Ask to make a call. Every permitted call must be followed by one of
+     * {@link #recordSuccess()}, {@link #recordFailure()} or {@link #recordIgnored()}.
+     * @throws DatabaseServiceException if the breaker is open, or half open with all trials taken
+     */
+    public synchronized void acquire() throws DatabaseServiceException {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openTime) {
+            state = State.HALF_OPEN;
+            trials = 0;
+            logger.info("Trying database host {} again", host);
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && trials >= halfOpenTrials)) {
+            rejected++;
+            throw new DatabaseServiceException(true, REJECTED_STATE, 0, "Database host " + host
+                    + " is unavailable after repeated connection failures, retrying in "
+                    + (getRetryIn() / 1000 + 1) + "s");
+        }
+        if (state == State.HALF_OPEN) {
+            trials++;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Database host {} is reachable again", host);
+        }
+        state = State.CLOSED;
+        failures = 0;
+        trials = 0;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            logger.warn("Database host {} failed {} times in a row, rejecting calls for {}ms", host, failures, openTime);
+        }
+    }
+
+    /**
+     * The permitted call failed for a reason unrelated to the host.
+     */
+    public synchronized void recordIgnored() {
+        if (state == State.HALF_OPEN && trials > 0) {
+            trials--;
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Number of calls rejected without trying the host.
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Milliseconds until an open breaker lets a trial call through, 0 if it is not open.
+     */
+    public synchronized long getRetryIn() {
+        return state == State.OPEN ? Math.max(0, openedAt + openTime - System.currentTimeMillis()) : 0;
+    }
+
+}
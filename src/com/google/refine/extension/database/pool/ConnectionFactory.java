@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.SessionProfile;
+
+/**
+ * Opens physical JDBC connections on behalf of a {@link ConnectionPool}.
+ * Implemented by the vendor connection managers.
+ */
+public interface ConnectionFactory {
+
+    /**
+     * Open a new physical connection for the given configuration.
+     * @param dbConfig
+     * @return a new, unpooled connection
+     * @throws DatabaseServiceException
+     */
+    Connection createConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException;
+
+    /**
+     * Set the JDBC read-only flag and isolation level of a session profile on a physical
+     * connection. Called only when the profile differs from the one the connection already has.
+     * @param connection the physical connection
+     * @param readOnly
+     * @param isolation a {@link Connection} isolation level, or {@link Connection#TRANSACTION_NONE}
+     *        to leave it as it is
+     * @throws SQLException
+     */
+    default void applyJdbcSettings(Connection connection, boolean readOnly, int isolation) throws SQLException {
+        connection.setReadOnly(readOnly);
+        if (isolation > Connection.TRANSACTION_NONE) {
+            connection.setTransactionIsolation(isolation);
+        }
+    }
+
+    /**
+     * Apply the vendor specific part of a session profile to a physical connection, after
+     * {@link #applyJdbcSettings(Connection, boolean, int)}. Called only when the
+     * profile differs from the one the connection already has.
+     * @param connection the physical connection
+     * @param profile the new profile, or null to restore the server defaults
+     * @throws SQLException
+     */
+    default void applySessionSettings(Connection connection, SessionProfile profile) throws SQLException {
+    }
+
+    /**
+     * Make a schema the default for unqualified names on a physical connection. Called
+     * only when the schema differs from the one the connection already has.
+     * @param connection the physical connection
+     * @param dbConfig the configuration the connection was opened for
+     * @param schema the schema, or null to restore the default of the database
+     * @throws SQLException
+     */
+    default void applySchema(Connection connection, DatabaseConfiguration dbConfig, String schema) throws SQLException {
+        if (schema != null) {
+            connection.setSchema(schema);
+        }
+    }
+
+    /**
+     * How far a replica is behind its primary, see {@link ReplicaRouter}.
+     * @param connection a connection to the replica
+     * @return the lag in seconds, 0 if the server is not a replica, or -1 if unknown
+     * @throws SQLException
+     */
+    default long getReplicationLag(Connection connection) throws SQLException {
+        return -1;
+    }
+
+}
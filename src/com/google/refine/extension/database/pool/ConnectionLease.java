@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pooled connection held by one owner, such as an import job, for the owner's
+ * whole lifetime. Closing the lease gives the connection back to its pool.
+ */
+public class ConnectionLease implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger("ConnectionLease");
+
+    private final long id;
+    private final String owner;
+    private final Connection connection;
+    private final long acquiredAt;
+    private volatile boolean released = false;
+
+    ConnectionLease(long id, String owner, Connection connection) {
+        this.id = id;
+        this.owner = owner;
+        this.connection = connection;
+        this.acquiredAt = System.currentTimeMillis();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public long getAcquiredAt() {
+        return acquiredAt;
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Return the connection to its pool. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+        }
+        ConnectionLeaseRegistry.getInstance().remove(this);
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Leased connection for {} could not be returned", owner, e);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Lease released for {} after {}ms", owner, System.currentTimeMillis() - acquiredAt);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionLease [id=" + id + ", owner=" + owner + ", connection=" + connection + "]";
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks which owner holds which leased connection, so every import job works on its
+ * own connection and nobody can close a connection another job is still reading from.
+ * <p>
+ * Every lease is a separate entry, even for the same owner: a job may read its preview
+ * on one request while another request of the same job creates the project, and
+ * neither may take the other's connection away.
+ */
+public class ConnectionLeaseRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger("ConnectionLeaseRegistry");
+
+    private static ConnectionLeaseRegistry instance;
+
+    private final ConcurrentMap<Long, ConnectionLease> leases = new ConcurrentHashMap<Long, ConnectionLease>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    private ConnectionLeaseRegistry() {
+    }
+
+    public static synchronized ConnectionLeaseRegistry getInstance() {
+        if (instance == null) {
+            instance = new ConnectionLeaseRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Lease a borrowed connection to an owner. Other leases of the same owner are left alone.
+     * @param owner
+     * @param connection a connection borrowed from a {@link ConnectionPool}
+     * @return
+     */
+    public ConnectionLease lease(String owner, Connection connection) {
+        ConnectionLease lease = new ConnectionLease(nextId.incrementAndGet(), owner, connection);
+        leases.put(lease.getId(), lease);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Leased connection {} to {}", lease.getId(), owner);
+        }
+        return lease;
+    }
+
+    /**
+     * @param owner
+     * @return the leases the owner holds, oldest first
+     */
+    public List<ConnectionLease> getLeases(String owner) {
+        List<ConnectionLease> held = new ArrayList<ConnectionLease>();
+        for (ConnectionLease lease : leases.values()) {
+            if (lease.getOwner().equals(owner)) {
+                held.add(lease);
+            }
+        }
+        Collections.sort(held, new Comparator<ConnectionLease>() {
+            @Override
+            public int compare(ConnectionLease a, ConnectionLease b) {
+                return Long.compare(a.getId(), b.getId());
+            }
+        });
+        return held;
+    }
+
+    /**
+     * Release every lease held by an owner, such as a job that is disposed of.
+     * @param owner
+     */
+    public void release(String owner) {
+        for (ConnectionLease lease : getLeases(owner)) {
+            lease.close();
+        }
+    }
+
+    public List<ConnectionLease> getLeases() {
+        return new ArrayList<ConnectionLease>(leases.values());
+    }
+
+    void remove(ConnectionLease lease) {
+        leases.remove(lease.getId(), lease);
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of physical connections the extension keeps open, in total and per
+ * database host, across all pools. Callers that find no free slot wait in a fair queue,
+ * for a bounded time, until another connection to the host is closed.
+ * <p>
+ * Idle connections held by other pools count against the caps as well. A borrower that
+ * finds no free slot first asks the {@link IdleReclaimer}, if there is one, to close
+ * one of them, so warm but unused connections cannot starve it.
+ */
+public class ConnectionLimiter {
+
+    /**
+     * Closes an idle connection of some pool to free its slot.
+     */
+    public interface IdleReclaimer {
+
+        /**
+         * @param host the host whose slot is wanted, or null when the total cap is the limit
+         * @return true if a connection was closed
+         */
+        boolean reclaim(String host);
+    }
+
+    private final int maxTotal;
+    private final int maxPerHost;
+    private final Semaphore total;
+    private final ConcurrentMap<String, Semaphore> hosts = new ConcurrentHashMap<String, Semaphore>();
+    private volatile IdleReclaimer idleReclaimer;
+
+    /**
+     * @param maxTotal physical connections allowed over all hosts
+     * @param maxPerHost physical connections allowed to a single host
+     */
+    public ConnectionLimiter(int maxTotal, int maxPerHost) {
+        this.maxTotal = Math.max(1, maxTotal);
+        this.maxPerHost = Math.max(1, Math.min(maxPerHost, this.maxTotal));
+        this.total = new Semaphore(this.maxTotal, true);
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    public void setIdleReclaimer(IdleReclaimer idleReclaimer) {
+        this.idleReclaimer = idleReclaimer;
+    }
+
+    /**
+     * Number of connections currently open, over all hosts.
+     */
+    public int getOpenCount() {
+        return maxTotal - total.availablePermits();
+    }
+
+    /**
+     * Number of connections currently open to one host.
+     * @param host
+     */
+    public int getOpenCount(String host) {
+        Semaphore permits = hosts.get(host);
+        return permits == null ? 0 : maxPerHost - permits.availablePermits();
+    }
+
+    /**
+     * Reserve a slot for a new connection to a host.
+     * @param host
+     * @param timeout milliseconds to wait for a free slot, 0 to give up at once
+     * @return false if no slot became free within the timeout
+     * @throws InterruptedException
+     */
+    public boolean acquire(String host, long timeout) throws InterruptedException {
+        return acquire(host, timeout, false);
+    }
+
+    /**
+     * Reserve a slot for a new connection to a host.
+     * @param host
+     * @param timeout milliseconds to wait for a free slot, 0 to give up at once
+     * @param reclaimIdle whether to close idle connections of other pools when no slot is free
+     * @return false if no slot became free within the timeout
+     * @throws InterruptedException
+     */
+    public boolean acquire(String host, long timeout, boolean reclaimIdle) throws InterruptedException {
+        IdleReclaimer reclaimer = idleReclaimer;
+        if (reclaimIdle && reclaimer != null) {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (!tryAcquireNow(host)) {
+                boolean hostFull = getOpenCount(host) >= maxPerHost;
+                if (!reclaimer.reclaim(hostFull ? host : null)) {
+                    // nothing idle left to close, wait for a borrowed connection to be closed
+                    return tryAcquireSlot(host, Math.max(0, deadline - System.currentTimeMillis()));
+                }
+            }
+            return true;
+        }
+        return tryAcquireSlot(host, timeout);
+    }
+
+    private boolean tryAcquireNow(String host) throws InterruptedException {
+        return tryAcquireSlot(host, 0);
+    }
+
+    private boolean tryAcquireSlot(String host, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        Semaphore hostPermits = getHostPermits(host);
+        if (!tryAcquire(hostPermits, timeout)) {
+            return false;
+        }
+        boolean acquired = false;
+        try {
+            acquired = tryAcquire(total, Math.max(0, deadline - System.currentTimeMillis()));
+            return acquired;
+        } finally {
+            if (!acquired) {
+                hostPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Give back the slot of a connection that has been closed.
+     * @param host
+     */
+    public void release(String host) {
+        getHostPermits(host).release();
+        total.release();
+    }
+
+    private static boolean tryAcquire(Semaphore permits, long timeout) throws InterruptedException {
+        // a timed tryAcquire honours the fair queue, the untimed one barges
+        return permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private Semaphore getHostPermits(String host) {
+        Semaphore permits = hosts.get(host);
+        if (permits == null) {
+            Semaphore created = new Semaphore(maxPerHost, true);
+            permits = hosts.putIfAbsent(host, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        return permits;
+    }
+
+}
@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.SessionProfile;
+
+/**
+ * A bounded pool of physical connections for one {@link ConnectionPoolKey}.
+ * Borrowers wait (fairly, up to the borrow timeout) for one of {@code maxSize}
+ * permits, then get the most recently used idle connection or a new one.
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger("ConnectionPool");
+
+    /** Connections used this recently are handed out without a validation round trip. */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    private final ConnectionPoolKey key;
+    private final DatabaseConfiguration dbConfig;
+    private final ConnectionFactory connectionFactory;
+    private final ConnectionLimiter connectionLimiter;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeout;
+    private final int validationTimeout;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+    private final Set<PooledConnection> active = ConcurrentHashMap.<PooledConnection> newKeySet();
+    private volatile boolean closed = false;
+    private final AtomicBoolean filled = new AtomicBoolean(false);
+    private volatile Executor warmUpExecutor;
+    private volatile long lastBorrowedAt = System.currentTimeMillis();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong leakedResources = new AtomicLong();
+    private volatile boolean leakDetection = false;
+
+    /**
+     * @param key
+     * @param dbConfig configuration used to open new connections
+     * @param connectionFactory
+     * @param connectionLimiter caps physical connections per host and overall
+     * @param minSize connections opened when the pool is first used
+     * @param maxSize maximum number of connections, borrowed or idle
+     * @param borrowTimeout milliseconds to wait for a free connection
+     * @param validationTimeout seconds allowed for {@link Connection#isValid(int)}
+     * @param statementCacheSize prepared statements cached per connection, 0 disables the cache
+     */
+    public ConnectionPool(ConnectionPoolKey key, DatabaseConfiguration dbConfig, ConnectionFactory connectionFactory,
+            ConnectionLimiter connectionLimiter, int minSize, int maxSize, long borrowTimeout, int validationTimeout, int statementCacheSize) {
+        this.key = key;
+        this.dbConfig = dbConfig;
+        this.connectionFactory = connectionFactory;
+        this.connectionLimiter = connectionLimiter;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+        this.borrowTimeout = borrowTimeout;
+        this.validationTimeout = validationTimeout;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * Where the connections up to the minimum size are opened after the first borrow;
+     * without one the first borrower opens them.
+     * @param warmUpExecutor
+     */
+    void setWarmUpExecutor(Executor warmUpExecutor) {
+        this.warmUpExecutor = warmUpExecutor;
+    }
+
+    public ConnectionPoolKey getKey() {
+        return key;
+    }
+
+    ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    DatabaseConfiguration getDatabaseConfiguration() {
+        return dbConfig;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Time of the last borrow, or of the pool's creation if it has not been borrowed from.
+     */
+    public long getLastBorrowedAt() {
+        return lastBorrowedAt;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * Number of prepareStatement calls answered from a connection's statement cache.
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    /**
+     * Number of prepareStatement calls that had to prepare a new statement.
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * Record where every statement and result set is created, so leaks can be reported
+     * with their allocation site. Costs a stack trace per statement; meant for debugging.
+     * @param leakDetection
+     */
+    public void setLeakDetection(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+    }
+
+    /**
+     * Number of statements and result sets borrowers left open and the pool closed for them.
+     */
+    public long getLeakedResources() {
+        return leakedResources.get();
+    }
+
+    void recordLeaks(int count) {
+        leakedResources.addAndGet(count);
+    }
+
+    void recordStatementCacheHit() {
+        statementCacheHits.incrementAndGet();
+    }
+
+    void recordStatementCacheMiss() {
+        statementCacheMisses.incrementAndGet();
+    }
+
+    /**
+     * Borrow a connection with the driver's default session settings.
+     * Closing the returned connection gives it back to the pool.
+     * @return
+     * @throws DatabaseServiceException if the pool is exhausted for longer than the borrow timeout
+     */
+    public Connection borrow() throws DatabaseServiceException {
+        return borrow(null, null);
+    }
+
+    /**
+     * Borrow a connection whose session is set up according to a profile.
+     * Closing the returned connection gives it back to the pool.
+     * @param profile the session profile, or null for the driver defaults
+     * @return
+     * @throws DatabaseServiceException if the pool is exhausted for longer than the borrow timeout,
+     * or the profile cannot be applied
+     */
+    public Connection borrow(SessionProfile profile) throws DatabaseServiceException {
+        return borrow(profile, null);
+    }
+
+    /**
+     * Borrow a connection whose session is set up according to a profile, with
+     * unqualified names resolved in the given schema.
+     * Closing the returned connection gives it back to the pool.
+     * @param profile the session profile, or null for the driver defaults
+     * @param schema the initial schema, or null for the default of the database
+     * @return
+     * @throws DatabaseServiceException if the pool is exhausted for longer than the borrow timeout,
+     * or the profile or schema cannot be applied
+     */
+    public Connection borrow(SessionProfile profile, String schema) throws DatabaseServiceException {
+        return borrow(profile, schema, borrowTimeout);
+    }
+
+    /**
+     * Borrow a connection, waiting at most the given time instead of the pool's borrow timeout.
+     * @param profile the session profile, or null for the driver defaults
+     * @param schema the initial schema, or null for the default of the database
+     * @param timeout milliseconds to wait for a free connection
+     * @return
+     * @throws DatabaseServiceException if the pool is exhausted for longer than the timeout,
+     * or the profile or schema cannot be applied
+     */
+    public Connection borrow(SessionProfile profile, String schema, long timeout) throws DatabaseServiceException {
+        if (closed) {
+            throw new DatabaseServiceException("Connection pool for " + key + " is closed");
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new DatabaseServiceException("Timed out after " + timeout
+                        + "ms waiting for a connection to " + key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseServiceException("Interrupted while waiting for a connection to " + key);
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = open(Math.max(0, deadline - System.currentTimeMillis()), true);
+            }
+            Connection connection;
+            try {
+                connection = pooled.checkout(profile, schema);
+            } catch (SQLException e) {
+                logger.warn("Could not apply {} and schema {} to a connection for {}", profile, schema, key);
+                pooled.closePhysical();
+                throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+            }
+            active.add(pooled);
+            lastBorrowedAt = System.currentTimeMillis();
+            if (filled.compareAndSet(false, true)) {
+                warmUp();
+            }
+            return connection;
+        } catch (DatabaseServiceException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Most recently used idle connection that still validates, or null.
+     */
+    private PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            long sinceLastUse = System.currentTimeMillis() - pooled.getLastUsedAt();
+            if (sinceLastUse < VALIDATION_BYPASS_MILLIS || pooled.isValid(validationTimeout)) {
+                return pooled;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Discarding invalid idle connection for {}", key);
+            }
+            pooled.closePhysical();
+        }
+        return null;
+    }
+
+    /**
+     * Open a new physical connection once the {@link ConnectionLimiter} has a slot for it.
+     * @param timeout milliseconds to wait for a slot
+     * @param reclaimIdle whether idle connections of other pools may be closed to make room
+     */
+    private PooledConnection open(long timeout, boolean reclaimIdle) throws DatabaseServiceException {
+        String host = key.getHostKey();
+        try {
+            if (!connectionLimiter.acquire(host, timeout, reclaimIdle)) {
+                throw new DatabaseServiceException("Timed out waiting for a free connection slot to " + host
+                        + ", " + connectionLimiter.getOpenCount(host) + " connections are open");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseServiceException("Interrupted while waiting for a connection slot to " + host);
+        }
+        try {
+            Connection connection = connectionFactory.createConnection(dbConfig);
+            if (logger.isDebugEnabled()) {
+                logger.debug("*** Acquired New pooled connection for ::{} **** ", key);
+            }
+            return new PooledConnection(this, connection);
+        } catch (DatabaseServiceException e) {
+            connectionLimiter.release(host);
+            throw e;
+        } catch (RuntimeException e) {
+            connectionLimiter.release(host);
+            throw e;
+        }
+    }
+
+    /**
+     * Called once for every physical connection that has been closed.
+     * @param pooled
+     */
+    void closed(PooledConnection pooled) {
+        connectionLimiter.release(key.getHostKey());
+    }
+
+    /**
+     * Open connections up to the minimum size the first time the pool is used, in the
+     * background when there is a warm-up executor, so the first borrower only waits for
+     * its own connection.
+     */
+    private void warmUp() {
+        Executor executor = warmUpExecutor;
+        if (executor == null) {
+            fill();
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fill();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down, maintenance reopens the minimum connections otherwise
+            logger.debug("Warm-up of {} rejected: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Open connections up to the minimum size.
+     * <p>
+     * Each connection is opened while holding a pool permit, like a borrower's, so
+     * borrows running at the same time cannot push the pool past its maximum size. No
+     * lock is held while connecting, so returns and maintenance never wait for it.
+     */
+    private void fill() {
+        while (!closed && active.size() + idle.size() < minSize && permits.tryAcquire()) {
+            try {
+                // background work, do not queue for a connection slot
+                idle.offerLast(open(0, false));
+            } catch (DatabaseServiceException e) {
+                logger.warn("Could not open minimum connections for {}: {}", key, e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Background upkeep run by the {@link ConnectionPoolManager} reaper: close idle
+     * connections unused for longer than {@code maxIdleTime} (never dropping below the
+     * minimum size), close idle connections that fail validation, then reopen up to the
+     * minimum size so the next borrower does not pay for a reconnect.
+     * <p>
+     * The minimum size is only kept while the pool is in use: once nobody has borrowed
+     * from it for {@code maxIdleTime}, its idle connections expire like any other, so the
+     * manager can retire it, see {@link #retireIfUnused(long)}.
+     * <p>
+     * Each connection is checked while holding a pool permit, so the pool never grows
+     * past its maximum size; if the pool is busy the remaining connections are left to
+     * the borrowers, who validate them anyway.
+     * @param maxIdleTime milliseconds an idle connection is kept, 0 to keep them forever
+     */
+    void maintain(long maxIdleTime) {
+        if (closed) {
+            return;
+        }
+        // idle connections are ordered most recently used first, look at the oldest first
+        List<PooledConnection> snapshot = new ArrayList<PooledConnection>(idle);
+        long now = System.currentTimeMillis();
+        boolean unused = isUnused(maxIdleTime, now);
+        int surplus = active.size() + snapshot.size() - (unused ? 0 : minSize);
+        int evicted = 0;
+        int invalid = 0;
+        for (int i = snapshot.size() - 1; i >= 0 && !closed; i--) {
+            PooledConnection pooled = snapshot.get(i);
+            if (!permits.tryAcquire()) {
+                break;
+            }
+            try {
+                if (!idle.remove(pooled)) {
+                    continue; // borrowed in the meantime
+                }
+                if (maxIdleTime > 0 && surplus > 0 && now - pooled.getLastUsedAt() > maxIdleTime) {
+                    pooled.closePhysical();
+                    surplus--;
+                    evicted++;
+                } else if (!pooled.isValid(validationTimeout)) {
+                    pooled.closePhysical();
+                    surplus--;
+                    invalid++;
+                } else {
+                    idle.offerLast(pooled);
+                }
+            } finally {
+                permits.release();
+            }
+        }
+        if (evicted + invalid > 0) {
+            logger.info("Closed {} expired and {} broken idle connections for {}",
+                    new Object[] { evicted, invalid, key });
+        }
+        if (filled.get() && !unused) {
+            replenish();
+        }
+    }
+
+    private boolean isUnused(long maxIdleTime, long now) {
+        return maxIdleTime > 0 && now - lastBorrowedAt > maxIdleTime;
+    }
+
+    /**
+     * Close the pool if it holds no connections and nobody has borrowed from it for
+     * {@code maxIdleTime}, so a configuration that is no longer used (an old password, a
+     * database queried once) does not keep a pool, or a connection slot, for ever.
+     * @param maxIdleTime milliseconds, 0 never retires the pool
+     * @return true if the pool was closed
+     */
+    synchronized boolean retireIfUnused(long maxIdleTime) {
+        if (closed || !active.isEmpty() || !idle.isEmpty() || !isUnused(maxIdleTime, System.currentTimeMillis())) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    /**
+     * Open connections until the pool holds its minimum size again.
+     */
+    private void replenish() {
+        while (!closed && active.size() + idle.size() < minSize && permits.tryAcquire()) {
+            try {
+                idle.offerLast(open(0, false));
+            } catch (DatabaseServiceException e) {
+                logger.warn("Could not reopen minimum connections for {}: {}", key, e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Close the least recently used idle connection, to give its slot to another pool.
+     * @return true if a connection was closed
+     */
+    boolean evictIdle() {
+        if (closed || !permits.tryAcquire()) {
+            return false;
+        }
+        try {
+            PooledConnection pooled = idle.pollLast();
+            if (pooled == null) {
+                return false;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Closing an idle connection for {} to make room for another pool", key);
+            }
+            pooled.closePhysical();
+            return true;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Called when a borrower closes its connection.
+     * @param pooled
+     */
+    void release(PooledConnection pooled) {
+        if (!active.remove(pooled)) {
+            return;
+        }
+        try {
+            if (closed || !pooled.reset()) {
+                pooled.closePhysical();
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close all connections, including borrowed ones, and refuse further borrows.
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.closePhysical();
+        }
+        for (PooledConnection borrowed : active) {
+            borrowed.closePhysical();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Connection pool closed for {}, statement cache hits: {}, misses: {}",
+                    new Object[] { key, statementCacheHits.get(), statementCacheMisses.get() });
+        }
+    }
+
+}
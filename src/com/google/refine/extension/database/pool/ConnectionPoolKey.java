@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+
+/**
+ * Identity of a pooled connection target. Two configurations that resolve to the
+ * same key share the same {@link ConnectionPool}. The initial schema is not part of
+ * the key; it is applied when a connection is checked out.
+ */
+public final class ConnectionPoolKey {
+
+    private final String databaseType;
+    private final String databaseHost;
+    private final int databasePort;
+    private final String databaseName;
+    private final String databaseUser;
+    private final boolean useSSL;
+    private final Map<String, String> connectionProperties;
+    private final String jdbcUrl;
+    private final String driverClass;
+    // part of the identity so a wrong password never gets an authenticated connection,
+    // but never printed
+    private final String databasePassword;
+
+    public ConnectionPoolKey(DatabaseConfiguration dbConfig) {
+        this.databaseType = lower(dbConfig.getDatabaseType());
+        this.databaseHost = lower(dbConfig.getDatabaseHost());
+        this.databasePort = dbConfig.getDatabasePort();
+        this.databaseName = dbConfig.getDatabaseName();
+        this.databaseUser = dbConfig.getDatabaseUser();
+        this.useSSL = dbConfig.isUseSSL();
+        this.connectionProperties = dbConfig.getConnectionProperties() == null
+                ? Collections.<String, String> emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<String, String>(dbConfig.getConnectionProperties()));
+        this.jdbcUrl = dbConfig.getJdbcUrl();
+        this.driverClass = dbConfig.getDriverClass();
+        this.databasePassword = dbConfig.getDatabasePassword();
+    }
+
+    private static String lower(String value) {
+        return value == null ? null : value.toLowerCase();
+    }
+
+    private static boolean same(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int hash(Object o) {
+        return o == null ? 0 : o.hashCode();
+    }
+
+    public String getDatabaseType() {
+        return databaseType;
+    }
+
+    public String getDatabaseHost() {
+        return databaseHost;
+    }
+
+    public int getDatabasePort() {
+        return databasePort;
+    }
+
+    /**
+     * The database server this key connects to, as counted by the {@link ConnectionLimiter}.
+     * <p>
+     * A single host is written as its {@link HostAddress}, the same as its circuit breaker
+     * and as a read replica. A failover list is written as its hosts in order, each with
+     * its port, and is one bucket of the limiter: the pool opens its connection slot before
+     * the {@link ParallelConnector} knows which host answers, and all the connections
+     * of the list go to the same host as long as it stays up.
+     */
+    public String getHostKey() {
+        if (jdbcUrl != null) {
+            return getServerUrl();
+        }
+        if (databaseHost == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (HostAddress address : HostAddress.parseList(databaseHost, databasePort)) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(address);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A generic JDBC URL without its parameters, which may carry credentials.
+     */
+    private String getServerUrl() {
+        int end = jdbcUrl.length();
+        for (char c : new char[] { '?', ';' }) {
+            int i = jdbcUrl.indexOf(c);
+            if (i >= 0 && i < end) {
+                end = i;
+            }
+        }
+        return jdbcUrl.substring(0, end);
+    }
+
+    public Map<String, String> getConnectionProperties() {
+        return connectionProperties;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConnectionPoolKey)) {
+            return false;
+        }
+        ConnectionPoolKey other = (ConnectionPoolKey) obj;
+        return databasePort == other.databasePort
+                && useSSL == other.useSSL
+                && same(databaseType, other.databaseType)
+                && same(databaseHost, other.databaseHost)
+                && same(databaseName, other.databaseName)
+                && same(databaseUser, other.databaseUser)
+                && connectionProperties.equals(other.connectionProperties)
+                && same(jdbcUrl, other.jdbcUrl)
+                && same(driverClass, other.driverClass)
+                && same(databasePassword, other.databasePassword);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = hash(databaseType);
+        result = 31 * result + hash(databaseHost);
+        result = 31 * result + databasePort;
+        result = 31 * result + hash(databaseName);
+        result = 31 * result + hash(databaseUser);
+        result = 31 * result + (useSSL ? 1 : 0);
+        result = 31 * result + connectionProperties.hashCode();
+        result = 31 * result + hash(jdbcUrl);
+        result = 31 * result + hash(driverClass);
+        result = 31 * result + hash(databasePassword);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (jdbcUrl != null) {
+            return databaseUser + "@" + getServerUrl();
+        }
+        return databaseType + "://" + databaseUser + "@" + databaseHost
+                + ((databasePort == 0) ? "" : (":" + databasePort)) + "/" + databaseName
+                + (useSSL ? "?useSSL=true" : "");
+    }
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseModuleImpl;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.SessionProfile;
+
+/**
+ * Holds one {@link ConnectionPool} per {@link ConnectionPoolKey}, shared by all the
+ * vendor connection managers. A background reaper keeps the pools healthy, see
+ * {@link ConnectionPool#maintain(long)}.
+ */
+public class ConnectionPoolManager {
+
+    private static final Logger logger = LoggerFactory.getLogger("ConnectionPoolManager");
+
+    private static final int DEFAULT_MIN_SIZE = 1;
+    private static final int DEFAULT_MAX_SIZE = 10;
+    private static final int DEFAULT_BORROW_TIMEOUT = 30000;
+    private static final int DEFAULT_VALIDATION_TIMEOUT = 5;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 20;
+    private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 50;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    private static final int DEFAULT_MAINTENANCE_INTERVAL = 30000;
+    private static final int DEFAULT_MAX_IDLE_TIME = 600000;
+
+    private static ConnectionPoolManager instance;
+
+    private final Map<ConnectionPoolKey, ConnectionPool> pools = new ConcurrentHashMap<ConnectionPoolKey, ConnectionPool>();
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+    private final ConnectionLimiter connectionLimiter;
+    private ScheduledExecutorService reaper;
+
+    private ConnectionPoolManager() {
+        connectionLimiter = new ConnectionLimiter(
+                DatabaseModuleImpl.getIntProperty("pool.maxTotalConnections", DEFAULT_MAX_TOTAL_CONNECTIONS),
+                DatabaseModuleImpl.getIntProperty("pool.maxConnectionsPerHost", DEFAULT_MAX_CONNECTIONS_PER_HOST));
+        connectionLimiter.setIdleReclaimer(new ConnectionLimiter.IdleReclaimer() {
+            @Override
+            public boolean reclaim(String host) {
+                return evictIdle(host);
+            }
+        });
+    }
+
+    public static synchronized ConnectionPoolManager getInstance() {
+        if (instance == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("::Creating new ConnectionPoolManager ::");
+            }
+            instance = new ConnectionPoolManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the pool for a configuration, creating it on first use.
+     * @param dbConfig
+     * @param connectionFactory
+     * @return
+     */
+    public ConnectionPool getPool(DatabaseConfiguration dbConfig, ConnectionFactory connectionFactory) {
+        ConnectionPoolKey key = new ConnectionPoolKey(dbConfig);
+        ConnectionPool pool = pools.get(key);
+        if (pool == null || pool.isClosed()) {
+            synchronized (pools) {
+                pool = pools.get(key);
+                if (pool == null || pool.isClosed()) {
+                    pool = new ConnectionPool(key, dbConfig, connectionFactory, connectionLimiter,
+                            DatabaseModuleImpl.getIntProperty("pool.minSize", DEFAULT_MIN_SIZE),
+                            DatabaseModuleImpl.getIntProperty("pool.maxSize", DEFAULT_MAX_SIZE),
+                            DatabaseModuleImpl.getIntProperty("pool.borrowTimeout", DEFAULT_BORROW_TIMEOUT),
+                            DatabaseModuleImpl.getIntProperty("pool.validationTimeout", DEFAULT_VALIDATION_TIMEOUT),
+                            DatabaseModuleImpl.getIntProperty("pool.statementCacheSize", DEFAULT_STATEMENT_CACHE_SIZE));
+                    pool.setLeakDetection(DatabaseModuleImpl.getBooleanProperty("pool.leakDetection", false));
+                    // the reaper also opens the minimum connections, off the borrower's thread
+                    pool.setWarmUpExecutor(startReaper());
+                    pools.put(key, pool);
+                    logger.info("Created connection pool for {}", key);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Borrow a connection from the pool for this configuration.
+     * @param dbConfig
+     * @param connectionFactory
+     * @return a pooled connection, returned to the pool on close
+     * @throws DatabaseServiceException
+     */
+    public Connection getConnection(DatabaseConfiguration dbConfig, ConnectionFactory connectionFactory)
+            throws DatabaseServiceException {
+        return getConnection(dbConfig, connectionFactory, null);
+    }
+
+    /**
+     * Borrow a connection whose session is set up according to a profile.
+     * @param dbConfig
+     * @param connectionFactory
+     * @param profile
+     * @return a pooled connection, returned to the pool on close
+     * @throws DatabaseServiceException
+     */
+    public Connection getConnection(DatabaseConfiguration dbConfig, ConnectionFactory connectionFactory,
+            SessionProfile profile) throws DatabaseServiceException {
+        return getConnection(dbConfig, connectionFactory, profile,
+                DatabaseModuleImpl.getIntProperty("pool.borrowTimeout", DEFAULT_BORROW_TIMEOUT));
+    }
+
+    /**
+     * Borrow a connection, waiting at most the given time for the pool to have one free.
+     * @param dbConfig
+     * @param connectionFactory
+     * @param profile
+     * @param borrowTimeout milliseconds
+     * @return a pooled connection, returned to the pool on close
+     * @throws DatabaseServiceException
+     */
+    public Connection getConnection(DatabaseConfiguration dbConfig, ConnectionFactory connectionFactory,
+            SessionProfile profile, long borrowTimeout) throws DatabaseServiceException {
+        ConnectionPool pool = getPool(dbConfig, connectionFactory);
+        try {
+            return pool.borrow(profile, dbConfig.getDatabaseSchema(), borrowTimeout);
+        } catch (DatabaseServiceException e) {
+            if (!pool.isClosed()) {
+                throw e;
+            }
+            // the reaper retired the pool in the meantime, a new one replaces it
+            return getPool(dbConfig, connectionFactory).borrow(profile, dbConfig.getDatabaseSchema(), borrowTimeout);
+        }
+    }
+
+    /**
+     * The circuit breaker guarding a database server that is not reached through the
+     * {@link ParallelConnector}, which keeps a breaker per host of its own.
+     * @param hostKey as in {@link ConnectionPoolKey#getHostKey()}
+     * @return
+     */
+    public CircuitBreaker getCircuitBreaker(String hostKey) {
+        CircuitBreaker breaker = circuitBreakers.get(hostKey);
+        if (breaker == null) {
+            synchronized (circuitBreakers) {
+                breaker = circuitBreakers.get(hostKey);
+                if (breaker == null) {
+                    breaker = CircuitBreaker.forHost(hostKey);
+                    circuitBreakers.put(hostKey, breaker);
+                }
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Every circuit breaker, including the per-host ones of the {@link ParallelConnector}.
+     * @return
+     */
+    public Collection<CircuitBreaker> getCircuitBreakers() {
+        List<CircuitBreaker> breakers = new ArrayList<CircuitBreaker>(circuitBreakers.values());
+        breakers.addAll(ParallelConnector.getInstance().getCircuitBreakers());
+        return breakers;
+    }
+
+    /**
+     * Start the background reaper, unless it runs already or pool.maintenanceInterval is 0.
+     * @return the reaper, null if there is none
+     */
+    private synchronized ScheduledExecutorService startReaper() {
+        if (reaper != null) {
+            return reaper;
+        }
+        long interval = DatabaseModuleImpl.getIntProperty("pool.maintenanceInterval", DEFAULT_MAINTENANCE_INTERVAL);
+        if (interval <= 0) {
+            return null;
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "db-extension-pool-reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                maintain();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        return reaper;
+    }
+
+    /**
+     * Run one maintenance pass over every pool, and retire the pools nobody has borrowed
+     * from for pool.maxIdleTime once their connections have expired.
+     */
+    public void maintain() {
+        long maxIdleTime = DatabaseModuleImpl.getIntProperty("pool.maxIdleTime", DEFAULT_MAX_IDLE_TIME);
+        for (ConnectionPool pool : getPools()) {
+            try {
+                pool.maintain(maxIdleTime);
+                retire(pool, maxIdleTime);
+            } catch (RuntimeException e) {
+                // never let one pool kill the reaper thread
+                logger.error("Maintenance failed for connection pool {}", pool.getKey(), e);
+            }
+        }
+    }
+
+    private void retire(ConnectionPool pool, long maxIdleTime) {
+        synchronized (pools) {
+            if (pools.get(pool.getKey()) != pool || !pool.retireIfUnused(maxIdleTime)) {
+                return;
+            }
+            pools.remove(pool.getKey());
+        }
+        logger.info("Retired unused connection pool for {}", pool.getKey());
+    }
+
+    /**
+     * Close one idle connection of the pool, among those of a host, that was least
+     * recently borrowed from.
+     * @param hostKey as in {@link ConnectionPoolKey#getHostKey()}, or null for any host
+     * @return true if a connection was closed
+     */
+    boolean evictIdle(String hostKey) {
+        List<ConnectionPool> candidates = new ArrayList<ConnectionPool>();
+        for (ConnectionPool pool : pools.values()) {
+            if (pool.getIdleCount() > 0 && (hostKey == null || pool.getKey().getHostKey().equals(hostKey))) {
+                candidates.add(pool);
+            }
+        }
+        Collections.sort(candidates, new Comparator<ConnectionPool>() {
+            @Override
+            public int compare(ConnectionPool a, ConnectionPool b) {
+                return Long.compare(a.getLastBorrowedAt(), b.getLastBorrowedAt());
+            }
+        });
+        for (ConnectionPool pool : candidates) {
+            if (pool.evictIdle()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of connections currently borrowed from all pools of one database server.
+     * @param hostKey as in {@link ConnectionPoolKey#getHostKey()}
+     * @return
+     */
+    public int getActiveCount(String hostKey) {
+        int active = 0;
+        for (ConnectionPool pool : pools.values()) {
+            if (pool.getKey().getHostKey().equals(hostKey)) {
+                active += pool.getActiveCount();
+            }
+        }
+        return active;
+    }
+
+    public ConnectionLimiter getConnectionLimiter() {
+        return connectionLimiter;
+    }
+
+    public Collection<ConnectionPool> getPools() {
+        return new ArrayList<ConnectionPool>(pools.values());
+    }
+
+    /**
+     * Close and forget all pools for one database type.
+     * @param databaseType
+     */
+    public void shutdown(String databaseType) {
+        List<ConnectionPool> closing = new ArrayList<ConnectionPool>();
+        synchronized (pools) {
+            Iterator<ConnectionPool> it = pools.values().iterator();
+            while (it.hasNext()) {
+                ConnectionPool pool = it.next();
+                if (databaseType.equalsIgnoreCase(pool.getKey().getDatabaseType())) {
+                    it.remove();
+                    closing.add(pool);
+                }
+            }
+        }
+        for (ConnectionPool pool : closing) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Close all pools, forget the circuit breakers and stop the reaper.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (reaper != null) {
+                reaper.shutdownNow();
+                reaper = null;
+            }
+        }
+        List<ConnectionPool> closing;
+        synchronized (pools) {
+            closing = new ArrayList<ConnectionPool>(pools.values());
+            pools.clear();
+        }
+        circuitBreakers.clear();
+        for (ConnectionPool pool : closing) {
+            pool.close();
+        }
+    }
+
+}
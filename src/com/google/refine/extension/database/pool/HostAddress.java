@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.refine.extension.database.DatabaseUtils;
+
+/**
+ * A database server as written in a connection: host, or host:port.
+ */
+public final class HostAddress {
+
+    private final String host;
+    private final int port;
+
+    public HostAddress(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @param spec host or host:port
+     * @param defaultPort the port used when the spec has none
+     * @return
+     */
+    public static HostAddress parse(String spec, int defaultPort) {
+        String host = spec.trim();
+        int port = defaultPort;
+        int colon = host.lastIndexOf(':');
+        // more than one colon is an IPv6 address without a port
+        if (colon > 0 && colon == host.indexOf(':')) {
+            try {
+                port = Integer.parseInt(host.substring(colon + 1).trim());
+                host = host.substring(0, colon).trim();
+            } catch (NumberFormatException nfe) {
+                // not a port, keep the whole string as the host
+            }
+        }
+        return new HostAddress(host, port);
+    }
+
+    /**
+     * Parse a list of hosts, as accepted by {@link DatabaseUtils#parseHostList(String)}.
+     * @param text
+     * @param defaultPort
+     * @return
+     */
+    public static List<HostAddress> parseList(String text, int defaultPort) {
+        List<HostAddress> addresses = new ArrayList<HostAddress>();
+        for (String spec : DatabaseUtils.parseHostList(text)) {
+            addresses.add(parse(spec, defaultPort));
+        }
+        return addresses;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof HostAddress)) {
+            return false;
+        }
+        HostAddress other = (HostAddress) obj;
+        return port == other.port && host.equalsIgnoreCase(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * host.toLowerCase().hashCode() + port;
+    }
+
+    @Override
+    public String toString() {
+        return host + ((port == 0) ? "" : (":" + port));
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseModuleImpl;
+import com.google.refine.extension.database.DatabaseServiceException;
+
+/**
+ * Opens a connection to the first reachable of an ordered list of hosts.
+ * <p>
+ * The first host is tried at once; every connect.stagger ms without an answer, and
+ * right after a failure, the next host is tried in parallel. The first connection
+ * opened wins, the other attempts are abandoned and whatever they still open is closed.
+ * Hosts that failed within connect.failureMemory ms are tried after all the others,
+ * so a dead host does not cost every new connection a timeout.
+ * <p>
+ * Each host has its own {@link CircuitBreaker}: a host whose breaker is open is not
+ * tried at all, and the outcome of every attempt is recorded against the host tried,
+ * so hosts shared by several connections share their breaker.
+ */
+public class ParallelConnector {
+
+    private static final Logger logger = LoggerFactory.getLogger("ParallelConnector");
+
+    private static final int DEFAULT_STAGGER = 250;
+    private static final int DEFAULT_FAILURE_MEMORY = 60000;
+
+    private static ParallelConnector instance;
+
+    private final Map<HostAddress, Long> failedAt = new ConcurrentHashMap<HostAddress, Long>();
+    private final Map<HostAddress, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<HostAddress, CircuitBreaker>();
+    private final ExecutorService executor;
+
+    ParallelConnector() {
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "db-extension-connect-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static synchronized ParallelConnector getInstance() {
+        if (instance == null) {
+            instance = new ParallelConnector();
+        }
+        return instance;
+    }
+
+    /**
+     * Opens a physical connection to one host.
+     */
+    public interface HostConnector {
+
+        Connection connect(HostAddress address) throws SQLException, DatabaseServiceException;
+    }
+
+    /**
+     * Connect to the first host that answers.
+     * @param hosts the hosts in order of preference
+     * @param connector
+     * @return the first connection opened
+     * @throws SQLException the failure of the first host, with the others suppressed, if no host could be reached
+     * @throws DatabaseServiceException if the driver cannot be used at all
+     * @throws RuntimeException as thrown by the connector of the first host
+     */
+    public Connection connect(List<HostAddress> hosts, final HostConnector connector)
+            throws SQLException, DatabaseServiceException {
+        if (hosts.isEmpty()) {
+            throw new SQLException("No database host given", "08001");
+        }
+        if (hosts.size() == 1) {
+            return connectOne(hosts.get(0), connector);
+        }
+
+        List<HostAddress> ordered = order(hosts);
+        final AtomicBoolean settled = new AtomicBoolean(false);
+        CompletionService<Connection> attempts = new ExecutorCompletionService<Connection>(executor);
+        List<Future<Connection>> started = new ArrayList<Future<Connection>>(ordered.size());
+        Exception failure = null;
+        Connection won = null;
+        long stagger = DatabaseModuleImpl.getIntProperty("connect.stagger", DEFAULT_STAGGER);
+        int next = 0;
+        int pending = 0;
+        try {
+            while (next < ordered.size() || pending > 0) {
+                if (next < ordered.size() && (pending == 0 || stagger <= 0)) {
+                    started.add(attempts.submit(attempt(ordered.get(next++), connector, settled)));
+                    pending++;
+                    continue;
+                }
+                Future<Connection> done = next < ordered.size()
+                        ? attempts.poll(stagger, TimeUnit.MILLISECONDS)
+                        : attempts.take();
+                if (done == null) {
+                    // no answer in time, race the next host
+                    started.add(attempts.submit(attempt(ordered.get(next++), connector, settled)));
+                    pending++;
+                    continue;
+                }
+                pending--;
+                try {
+                    won = done.get();
+                    if (won != null) {
+                        return won;
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    Exception cause = (Exception) e.getCause();
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while connecting to " + ordered, "08001");
+        } finally {
+            settled.set(true);
+            for (Future<Connection> future : started) {
+                if (!future.cancel(true)) {
+                    closeUnclaimed(future, won);
+                }
+            }
+        }
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        }
+        if (failure instanceof DatabaseServiceException) {
+            throw (DatabaseServiceException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        throw new SQLException("Could not connect to " + ordered, "08001", failure);
+    }
+
+    private Callable<Connection> attempt(final HostAddress address, final HostConnector connector,
+            final AtomicBoolean settled) {
+        return new Callable<Connection>() {
+            @Override
+            public Connection call() throws SQLException, DatabaseServiceException {
+                Connection connection = connectOne(address, connector);
+                if (!settled.compareAndSet(false, true)) {
+                    // another host won the race
+                    close(connection);
+                    return null;
+                }
+                return connection;
+            }
+        };
+    }
+
+    private Connection connectOne(HostAddress address, HostConnector connector)
+            throws SQLException, DatabaseServiceException {
+        CircuitBreaker breaker = getCircuitBreaker(address);
+        breaker.acquire();
+        try {
+            Connection connection = connector.connect(address);
+            failedAt.remove(address);
+            breaker.recordSuccess();
+            return connection;
+        } catch (SQLException e) {
+            failedAt.put(address, System.currentTimeMillis());
+            logger.warn("Could not connect to {}: {}", address, e.getMessage());
+            if (CircuitBreaker.isConnectionFailure(e)) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordIgnored();
+            }
+            throw e;
+        } catch (DatabaseServiceException e) {
+            if (CircuitBreaker.isConnectionFailure(e)) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordIgnored();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.recordIgnored();
+            throw e;
+        }
+    }
+
+    /**
+     * The circuit breaker guarding one host, see {@link CircuitBreaker}.
+     * @param address
+     * @return
+     */
+    CircuitBreaker getCircuitBreaker(HostAddress address) {
+        CircuitBreaker breaker = circuitBreakers.get(address);
+        if (breaker == null) {
+            synchronized (circuitBreakers) {
+                breaker = circuitBreakers.get(address);
+                if (breaker == null) {
+                    breaker = CircuitBreaker.forHost(address.toString());
+                    circuitBreakers.put(address, breaker);
+                }
+            }
+        }
+        return breaker;
+    }
+
+    public Collection<CircuitBreaker> getCircuitBreakers() {
+        return new ArrayList<CircuitBreaker>(circuitBreakers.values());
+    }
+
+    /**
+     * The hosts in the given order, with the ones that failed recently moved to the end.
+     */
+    List<HostAddress> order(List<HostAddress> hosts) {
+        long forgetBefore = System.currentTimeMillis()
+                - DatabaseModuleImpl.getIntProperty("connect.failureMemory", DEFAULT_FAILURE_MEMORY);
+        List<HostAddress> ordered = new ArrayList<HostAddress>(hosts.size());
+        List<HostAddress> failed = new ArrayList<HostAddress>();
+        for (HostAddress host : hosts) {
+            Long at = failedAt.get(host);
+            if (at != null && at > forgetBefore) {
+                failed.add(host);
+            } else {
+                ordered.add(host);
+            }
+        }
+        ordered.addAll(failed);
+        return ordered;
+    }
+
+    /**
+     * Close the connection of a finished attempt, unless it is the one handed out.
+     */
+    private static void closeUnclaimed(Future<Connection> future, Connection won) {
+        try {
+            Connection connection = future.get();
+            if (connection != null && connection != won) {
+                close(connection);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // failed attempts have nothing to close
+        } catch (CancellationException e) {
+            // cancelled before it ran
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug("Abandoned connection could not be closed: {}", e.getMessage());
+        }
+    }
+
+}
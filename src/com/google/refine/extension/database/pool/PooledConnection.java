@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.SessionProfile;
+
+/**
+ * A physical connection owned by a {@link ConnectionPool}. Callers never see the
+ * physical connection directly; each checkout hands out a fresh proxy whose
+ * {@code close()} returns the connection to the pool.
+ * <p>
+ * When the pool has a statement cache, {@code prepareStatement(String)} reuses the
+ * physical statements prepared earlier on this connection, see {@link StatementCache}.
+ * Statements and result sets a borrower forgets to close are closed when the proxy is
+ * closed, see {@link ResourceTracker}.
+ */
+public class PooledConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger("PooledConnection");
+
+    /**
+     * Statement settings that outlive an execution. A cached statement whose borrower
+     * changed one of them is closed rather than handed to the next borrower of its SQL.
+     */
+    private static final Set<String> STATEMENT_SETTERS = new HashSet<String>(Arrays.asList(
+            "setFetchSize", "setFetchDirection", "setMaxRows", "setLargeMaxRows", "setMaxFieldSize",
+            "setQueryTimeout", "setEscapeProcessing", "setPoolable", "setCursorName", "closeOnCompletion"));
+
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final long createdAt;
+    private volatile long lastUsedAt;
+    private final StatementCache statementCache;
+    private final AtomicBoolean physicalClosed = new AtomicBoolean(false);
+    private final int defaultIsolation;
+    private SessionProfile sessionProfile;
+    private String schema;
+
+    PooledConnection(ConnectionPool pool, Connection connection) {
+        this.pool = pool;
+        this.connection = connection;
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+        this.statementCache = pool.getStatementCacheSize() > 0 ? new StatementCache(pool.getStatementCacheSize()) : null;
+        this.defaultIsolation = readIsolation(connection);
+    }
+
+    private static int readIsolation(Connection connection) {
+        try {
+            return connection.getTransactionIsolation();
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    public Connection getPhysicalConnection() {
+        return connection;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    /**
+     * Check the physical connection is still usable.
+     * @param timeoutSeconds
+     * @return
+     */
+    boolean isValid(int timeoutSeconds) {
+        try {
+            return !connection.isClosed() && connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            logger.debug("Connection validation failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Put the connection back into the state a fresh borrower expects.
+     * @return false if the connection could not be reset and must be discarded
+     */
+    boolean reset() {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            logger.warn("Pooled connection could not be reset, discarding it", e);
+            return false;
+        }
+    }
+
+    void closePhysical() {
+        if (!physicalClosed.compareAndSet(false, true)) {
+            return;
+        }
+        pool.closed(this);
+        if (statementCache != null) {
+            statementCache.clear();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Pooled connection could not be closed", e);
+        }
+    }
+
+    public SessionProfile getSessionProfile() {
+        return sessionProfile;
+    }
+
+    /**
+     * The schema last applied to this connection, or null for the default of the database.
+     */
+    public String getSchema() {
+        return schema;
+    }
+
+    /**
+     * Hand out a new proxy for this connection, switching the session to the requested
+     * profile and schema first if it has different ones. Both stay on the connection, so
+     * borrowers asking for the same again pay nothing.
+     * @param profile the session profile, or null for the driver defaults
+     * @param schema the initial schema, or null for the default of the database
+     * @return
+     * @throws SQLException if the profile or schema cannot be applied
+     */
+    Connection checkout(SessionProfile profile, String schema) throws SQLException {
+        if (profile == null ? sessionProfile != null : !profile.equals(sessionProfile)) {
+            applySessionProfile(profile);
+        }
+        if (schema != null && schema.trim().isEmpty()) {
+            schema = null;
+        }
+        if (schema == null ? this.schema != null : !schema.equals(this.schema)) {
+            pool.getConnectionFactory().applySchema(connection, pool.getDatabaseConfiguration(), schema);
+            this.schema = schema;
+            if (logger.isDebugEnabled()) {
+                logger.debug("Applied schema {} to a connection for {}", schema, pool.getKey());
+            }
+        }
+        lastUsedAt = System.currentTimeMillis();
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new Handle());
+    }
+
+    private void applySessionProfile(SessionProfile profile) throws SQLException {
+        int isolation = profile == null ? -1 : SessionProfile.toJdbcIsolation(profile.getIsolationLevel());
+        if (isolation == -1) {
+            isolation = defaultIsolation;
+        }
+        pool.getConnectionFactory().applyJdbcSettings(connection, profile != null && profile.isReadOnly(), isolation);
+        pool.getConnectionFactory().applySessionSettings(connection, profile);
+        sessionProfile = profile;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Applied {} to a connection for {}", profile, pool.getKey());
+        }
+    }
+
+    private void checkin() {
+        lastUsedAt = System.currentTimeMillis();
+        pool.release(this);
+    }
+
+    /**
+     * The proxy handed out to one borrower. Once closed it stays closed, so a stale
+     * reference cannot touch the connection after somebody else has borrowed it.
+     */
+    private class Handle implements InvocationHandler {
+
+        private final ResourceTracker tracker = new ResourceTracker(pool.isLeakDetection(), pool.getKey().toString());
+        private boolean closed = false;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if ("close".equals(name)) {
+                synchronized (this) {
+                    if (!closed) {
+                        closed = true;
+                        int leaked = tracker.closeAll(pool.getKey().toString());
+                        if (leaked > 0) {
+                            pool.recordLeaks(leaked);
+                        }
+                        checkin();
+                    }
+                }
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return closed || connection.isClosed();
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(name)) {
+                return "Pooled[" + pool.getKey() + "]@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+
+            if (closed) {
+                throw new SQLException("Connection is closed");
+            }
+            if (statementCache != null && "prepareStatement".equals(name) && args.length == 1) {
+                return tracker.track(prepareCached((Connection) proxy, (String) args[0]), proxy, (String) args[0]);
+            }
+            Object result;
+            try {
+                result = method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                return tracker.track((Statement) result, proxy,
+                        args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null);
+            }
+            return result;
+        }
+    }
+
+    private PreparedStatement prepareCached(Connection owner, String sql) throws SQLException {
+        PreparedStatement statement = statementCache.take(sql);
+        if (statement != null && !statement.isClosed()) {
+            pool.recordStatementCacheHit();
+        } else {
+            statement = connection.prepareStatement(sql);
+            pool.recordStatementCacheMiss();
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new CachedStatementHandle(owner, sql, statement));
+    }
+
+    /**
+     * A cached statement as seen by one borrower. Closing it puts the physical
+     * statement back into the cache instead of closing it, unless the borrower
+     * changed its settings.
+     */
+    private class CachedStatementHandle implements InvocationHandler {
+
+        private final Connection owner;
+        private final String sql;
+        private final PreparedStatement statement;
+        private boolean closed = false;
+        private boolean reconfigured = false;
+
+        CachedStatementHandle(Connection owner, String sql, PreparedStatement statement) {
+            this.owner = owner;
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if ("close".equals(name)) {
+                synchronized (this) {
+                    if (!closed) {
+                        closed = true;
+                        giveBack();
+                    }
+                }
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return closed || statement.isClosed();
+            } else if ("getConnection".equals(name)) {
+                return owner;
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(name)) {
+                return "Cached[" + sql + "]";
+            }
+
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            if (STATEMENT_SETTERS.contains(name)) {
+                reconfigured = true;
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void giveBack() {
+            try {
+                if (statement.isClosed() || connection.isClosed()) {
+                    return;
+                }
+                if (reconfigured) {
+                    StatementCache.close(statement);
+                    return;
+                }
+                statement.clearParameters();
+                statement.clearWarnings();
+                statementCache.put(sql, statement);
+            } catch (SQLException e) {
+                logger.debug("Statement could not be returned to the cache: {}", e.getMessage());
+                StatementCache.close(statement);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseModuleImpl;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.SessionProfile;
+
+/**
+ * Sends read-only work of a configuration with replicas to the least loaded healthy
+ * replica, falling back to the primary when none is usable.
+ * <p>
+ * A replica that cannot be reached is skipped for replica.retryInterval ms; a replica
+ * that is only busy is passed over after replica.borrowTimeout ms and kept. When the
+ * configuration has a maximum lag, the lag of each replica is measured at most once
+ * every replica.lagCheckInterval ms on the connection about to be handed out.
+ */
+public class ReplicaRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger("ReplicaRouter");
+
+    private static final int DEFAULT_RETRY_INTERVAL = 30000;
+    private static final int DEFAULT_LAG_CHECK_INTERVAL = 5000;
+    private static final int DEFAULT_BORROW_TIMEOUT = 500;
+
+    private static ReplicaRouter instance;
+
+    private final ConnectionPoolManager poolManager;
+    private final Map<String, Long> unavailableUntil = new ConcurrentHashMap<String, Long>();
+    private final Map<String, LagSample> lagSamples = new ConcurrentHashMap<String, LagSample>();
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    ReplicaRouter(ConnectionPoolManager poolManager) {
+        this.poolManager = poolManager;
+    }
+
+    public static synchronized ReplicaRouter getInstance() {
+        if (instance == null) {
+            instance = new ReplicaRouter(ConnectionPoolManager.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Borrow a connection for read-only work.
+     * @param dbConfig the configuration of the primary, with its replicas
+     * @param connectionFactory
+     * @param profile the session profile, or null for the driver defaults
+     * @return a pooled connection to a replica, or to the primary if no replica is usable
+     * @throws DatabaseServiceException also if the configuration has replicas but connects
+     *         through a JDBC URL
+     */
+    public Connection getConnection(DatabaseConfiguration dbConfig, ConnectionFactory connectionFactory,
+            SessionProfile profile) throws DatabaseServiceException {
+        if (dbConfig.getReplicaHosts() == null || dbConfig.getReplicaHosts().isEmpty()) {
+            return poolManager.getConnection(dbConfig, connectionFactory, profile);
+        }
+        if (dbConfig.getJdbcUrl() != null && !dbConfig.getJdbcUrl().trim().isEmpty()) {
+            // a replica is another host in the same settings, a URL leaves nothing to swap
+            throw new DatabaseServiceException("Read replicas cannot be used with a JDBC URL connection, "
+                    + "remove them or give the host and port instead");
+        }
+        // the primary is always there to fall back to, so do not queue long for a replica
+        long borrowTimeout = DatabaseModuleImpl.getIntProperty("replica.borrowTimeout", DEFAULT_BORROW_TIMEOUT);
+        for (DatabaseConfiguration replica : candidates(dbConfig)) {
+            String host = new ConnectionPoolKey(replica).getHostKey();
+            Connection connection;
+            try {
+                connection = poolManager.getConnection(replica, connectionFactory, profile, borrowTimeout);
+            } catch (DatabaseServiceException e) {
+                if (CircuitBreaker.isConnectionFailure(e) && !CircuitBreaker.isRejection(e)) {
+                    logger.warn("Replica {} is unavailable, skipping it: {}", host, e.getMessage());
+                    markUnavailable(host);
+                } else {
+                    logger.info("Replica {} cannot be used now, trying the next: {}", host, e.getMessage());
+                }
+                continue;
+            }
+            if (isCaughtUp(host, connection, connectionFactory, dbConfig.getMaxReplicaLag())) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Routed {} to replica {}", dbConfig.getConnectionName(), host);
+                }
+                return connection;
+            }
+            close(connection);
+        }
+        logger.warn("No usable replica for {}, using the primary", dbConfig.getConnectionName());
+        return poolManager.getConnection(dbConfig, connectionFactory, profile);
+    }
+
+    /**
+     * Replicas not known to be down or lagging, least loaded first. Ties go round robin,
+     * so idle replicas share the load.
+     */
+    List<DatabaseConfiguration> candidates(DatabaseConfiguration dbConfig) {
+        long now = System.currentTimeMillis();
+        List<String> hosts = dbConfig.getReplicaHosts();
+        int start = Math.abs(rotation.getAndIncrement() % hosts.size());
+        List<DatabaseConfiguration> candidates = new ArrayList<DatabaseConfiguration>(hosts.size());
+        final Map<DatabaseConfiguration, Integer> load = new IdentityHashMap<DatabaseConfiguration, Integer>();
+        for (int i = 0; i < hosts.size(); i++) {
+            DatabaseConfiguration replica = forReplica(dbConfig, hosts.get((start + i) % hosts.size()));
+            String host = new ConnectionPoolKey(replica).getHostKey();
+            Long until = unavailableUntil.get(host);
+            if (until != null && until > now) {
+                continue;
+            }
+            LagSample sample = lagSamples.get(host);
+            if (sample != null && sample.isFresh(now) && !sample.isWithin(dbConfig.getMaxReplicaLag())) {
+                continue;
+            }
+            load.put(replica, poolManager.getActiveCount(host));
+            candidates.add(replica);
+        }
+        // stable, so equally loaded replicas keep their round robin order
+        Collections.sort(candidates, new Comparator<DatabaseConfiguration>() {
+            @Override
+            public int compare(DatabaseConfiguration a, DatabaseConfiguration b) {
+                return Integer.compare(load.get(a), load.get(b));
+            }
+        });
+        return candidates;
+    }
+
+    private boolean isCaughtUp(String host, Connection connection, ConnectionFactory connectionFactory, int maxLag) {
+        if (maxLag <= 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        LagSample sample = lagSamples.get(host);
+        if (sample == null || !sample.isFresh(now)) {
+            try {
+                sample = new LagSample(now, connectionFactory.getReplicationLag(connection));
+            } catch (SQLException e) {
+                logger.warn("Could not read the replication lag of {}, skipping it: {}", host, e.getMessage());
+                markUnavailable(host);
+                return false;
+            }
+            lagSamples.put(host, sample);
+        }
+        if (!sample.isWithin(maxLag)) {
+            logger.info("Replica {} is {}s behind, more than the allowed {}s", host, sample.lag, maxLag);
+            return false;
+        }
+        return true;
+    }
+
+    private void markUnavailable(String host) {
+        unavailableUntil.put(host, System.currentTimeMillis()
+                + DatabaseModuleImpl.getIntProperty("replica.retryInterval", DEFAULT_RETRY_INTERVAL));
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug("Replica connection could not be returned: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * The configuration of the primary pointed at one of its replicas. Only configurations
+     * with a host and port have replicas, see {@link #getConnection}.
+     * @param dbConfig
+     * @param replicaHost host or host:port; without a port the port of the primary is used
+     * @return
+     */
+    static DatabaseConfiguration forReplica(DatabaseConfiguration dbConfig, String replicaHost) {
+        DatabaseConfiguration replica = new DatabaseConfiguration();
+        replica.setConnectionName(dbConfig.getConnectionName());
+        replica.setDatabaseType(dbConfig.getDatabaseType());
+        replica.setDatabaseUser(dbConfig.getDatabaseUser());
+        replica.setDatabasePassword(dbConfig.getDatabasePassword());
+        replica.setDatabaseName(dbConfig.getDatabaseName());
+        replica.setDatabaseSchema(dbConfig.getDatabaseSchema());
+        replica.setUseSSL(dbConfig.isUseSSL());
+        replica.setSessionProfile(dbConfig.getSessionProfile());
+        replica.setConnectionProperties(dbConfig.getConnectionProperties());
+
+        HostAddress address = HostAddress.parse(replicaHost, dbConfig.getDatabasePort());
+        replica.setDatabaseHost(address.getHost());
+        replica.setDatabasePort(address.getPort());
+        return replica;
+    }
+
+    private static class LagSample {
+
+        private final long checkedAt;
+        private final long lag;
+
+        LagSample(long checkedAt, long lag) {
+            this.checkedAt = checkedAt;
+            this.lag = lag;
+        }
+
+        boolean isFresh(long now) {
+            return now - checkedAt < DatabaseModuleImpl.getIntProperty("replica.lagCheckInterval", DEFAULT_LAG_CHECK_INTERVAL);
+        }
+
+        boolean isWithin(int maxLag) {
+            // unknown lag cannot be held against a replica
+            return maxLag <= 0 || lag < 0 || lag <= maxLag;
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.pool.ActiveStatementRegistry.ActiveStatement;
+
+/**
+ * Keeps track of the statements and result sets created through one checkout of a
+ * pooled connection. Whatever the borrower leaves open is closed when the connection
+ * goes back to the pool, so server-side cursors and driver buffers never outlive the
+ * service call that created them.
+ * <p>
+ * With allocation sites enabled every tracked object remembers where it was created,
+ * and leaks are logged with that stack trace.
+ */
+class ResourceTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger("ResourceTracker");
+
+    private final boolean recordAllocationSites;
+    private final String connectionName;
+    private final Set<Tracked> open = ConcurrentHashMap.<Tracked> newKeySet();
+
+    /**
+     * @param recordAllocationSites
+     * @param connectionName how statements of this connection are listed in the {@link ActiveStatementRegistry}
+     */
+    ResourceTracker(boolean recordAllocationSites, String connectionName) {
+        this.recordAllocationSites = recordAllocationSites;
+        this.connectionName = connectionName;
+    }
+
+    int getOpenCount() {
+        return open.size();
+    }
+
+    /**
+     * Wrap a statement so it and its result sets are tracked.
+     * @param statement
+     * @param owner the connection proxy returned by {@code getConnection()}
+     * @param sql the statement text if it was prepared, or null
+     * @return
+     */
+    Statement track(Statement statement, Object owner, String sql) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) wrap(statement, type, owner, null, sql, null);
+    }
+
+    private Object wrap(Object target, Class<?> type, Object parent, Tracked parentTracked, String sql,
+            ActiveStatement fetching) {
+        Tracked tracked = new Tracked(target, parent, parentTracked, sql, fetching,
+                recordAllocationSites ? new Throwable("Allocated here") : null);
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, tracked);
+        open.add(tracked);
+        if (parentTracked != null) {
+            parentTracked.results.add(tracked);
+        }
+        return proxy;
+    }
+
+    /**
+     * Close everything still open, result sets before their statements.
+     * @param owner description of the borrower, used in leak reports
+     * @return number of leaked objects that were closed
+     */
+    int closeAll(String owner) {
+        List<Tracked> leaked = new ArrayList<Tracked>(open);
+        if (leaked.isEmpty()) {
+            return 0;
+        }
+        List<Tracked> ordered = new ArrayList<Tracked>(leaked.size());
+        for (Tracked tracked : leaked) {
+            if (tracked.target instanceof ResultSet) {
+                ordered.add(tracked);
+            }
+        }
+        for (Tracked tracked : leaked) {
+            if (!(tracked.target instanceof ResultSet)) {
+                ordered.add(tracked);
+            }
+        }
+        for (Tracked tracked : ordered) {
+            if (tracked.allocationSite != null) {
+                logger.warn("Leaked {} on {} closed when the connection was returned",
+                        tracked.describe(), owner, tracked.allocationSite);
+            }
+            tracked.close();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Closed {} leaked statements and result sets on {}", ordered.size(), owner);
+        }
+        return ordered.size();
+    }
+
+    private class Tracked implements InvocationHandler {
+
+        private final Object target;
+        private final Object parent;
+        // for result sets: the tracked statement that produced them
+        private final Tracked parentTracked;
+        private final String sql;
+        // for result sets: the execution whose rows they read
+        private final ActiveStatement fetching;
+        private final Throwable allocationSite;
+        private volatile boolean closed = false;
+        // for statements: the execution currently listed as active
+        private volatile ActiveStatement running;
+        // for statements: their open result sets, which the driver closes with them
+        private final Set<Tracked> results = ConcurrentHashMap.<Tracked> newKeySet();
+
+        Tracked(Object target, Object parent, Tracked parentTracked, String sql, ActiveStatement fetching,
+                Throwable allocationSite) {
+            this.target = target;
+            this.parent = parent;
+            this.parentTracked = parentTracked;
+            this.sql = sql;
+            this.fetching = fetching;
+            this.allocationSite = allocationSite;
+        }
+
+        String describe() {
+            return target instanceof ResultSet ? "ResultSet" : "Statement";
+        }
+
+        void close() {
+            closed = true;
+            open.remove(this);
+            if (parentTracked != null) {
+                parentTracked.results.remove(this);
+            }
+            closeResults();
+            finishRunning();
+            if (fetching != null) {
+                ActiveStatementRegistry.getInstance().finish(fetching);
+            }
+            try {
+                ((AutoCloseable) target).close();
+            } catch (Exception e) {
+                logger.debug("{} could not be closed: {}", describe(), e.getMessage());
+            }
+        }
+
+        /**
+         * Retire the result sets of this statement, which closing or executing it again
+         * closes implicitly.
+         */
+        private void closeResults() {
+            for (Tracked result : new ArrayList<Tracked>(results)) {
+                result.close();
+            }
+        }
+
+        private void finishRunning() {
+            ActiveStatement current = running;
+            if (current != null) {
+                running = null;
+                ActiveStatementRegistry.getInstance().finish(current);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if ("close".equals(name)) {
+                close();
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return closed || (Boolean) method.invoke(target, args);
+            } else if ("getConnection".equals(name) || "getStatement".equals(name)) {
+                return parent;
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(name)) {
+                return "Tracked[" + target + "]";
+            }
+
+            if (closed) {
+                throw new SQLException(describe() + " is closed");
+            }
+            boolean executing = target instanceof Statement && name.startsWith("execute");
+            if (executing) {
+                closeResults();
+                finishRunning();
+                String text = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+                running = ActiveStatementRegistry.getInstance().start(connectionName, parent, text, (Statement) target);
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                if (executing) {
+                    finishRunning();
+                }
+                throw e.getCause();
+            }
+            if (executing && !("executeQuery".equals(name) || Boolean.TRUE.equals(result))) {
+                // nothing left to fetch
+                finishRunning();
+            }
+            if ("next".equals(name) && fetching != null && Boolean.TRUE.equals(result)) {
+                fetching.rowFetched();
+            }
+            if (result instanceof ResultSet && method.getReturnType() == ResultSet.class) {
+                return wrap(result, ResultSet.class, proxy, this, null, running);
+            }
+            return result;
+        }
+    }
+
+}
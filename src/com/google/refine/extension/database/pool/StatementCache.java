@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded, least recently used cache of the physical prepared statements of one
+ * {@link PooledConnection}, keyed by their SQL text. A statement is taken out of the cache
+ * while a borrower uses it and put back when the borrower closes it, so two borrowers
+ * never share one statement. Statements pushed out of the cache are closed.
+ * <p>
+ * Only the connection's current borrower touches the cache, but the pool may close the
+ * connection from another thread, so access is synchronized.
+ */
+class StatementCache {
+
+    private static final Logger logger = LoggerFactory.getLogger("StatementCache");
+
+    private final int maxSize;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Take the cached statement for this SQL out of the cache.
+     * @param sql
+     * @return the statement, or null on a cache miss
+     */
+    synchronized PreparedStatement take(String sql) {
+        return statements.remove(sql);
+    }
+
+    /**
+     * Put a statement back after its borrower is done with it, evicting the least
+     * recently used statement if the cache is full.
+     * @param sql
+     * @param statement
+     */
+    void put(String sql, PreparedStatement statement) {
+        List<PreparedStatement> evicted = new ArrayList<PreparedStatement>(1);
+        synchronized (this) {
+            PreparedStatement previous = statements.put(sql, statement);
+            if (previous != null && previous != statement) {
+                evicted.add(previous);
+            }
+            Iterator<Map.Entry<String, PreparedStatement>> it = statements.entrySet().iterator();
+            while (statements.size() > maxSize && it.hasNext()) {
+                evicted.add(it.next().getValue());
+                it.remove();
+            }
+        }
+        for (PreparedStatement stale : evicted) {
+            close(stale);
+        }
+    }
+
+    /**
+     * Close and forget every cached statement.
+     */
+    void clear() {
+        List<PreparedStatement> closing;
+        synchronized (this) {
+            closing = new ArrayList<PreparedStatement>(statements.values());
+            statements.clear();
+        }
+        for (PreparedStatement statement : closing) {
+            close(statement);
+        }
+    }
+
+    static void close(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.debug("Cached statement could not be closed: {}", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.sqlite;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseModuleImpl;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.DatabaseUtils;
+import com.google.refine.extension.database.SQLType;
+import com.google.refine.extension.database.SessionProfile;
+import com.google.refine.extension.database.pool.ConnectionFactory;
+
+/**
+ * Opens local SQLite database files for reading. The file is opened read-only and
+ * the session is made query-only, read through memory-mapped I/O and given a large
+ * page cache, so a scan of the whole file runs at disk speed.
+ * <p>
+ * Only files under the sqlite.baseDir directory can be opened, by default the sqlite
+ * folder of the extension in the workspace; relative names are resolved against it.
+ */
+public class SQLiteConnectionManager implements ConnectionFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger("SQLiteConnectionManager");
+    // SQLITE_OPEN_READONLY
+    private static final String OPEN_READONLY = "1";
+    private static final int DEFAULT_MMAP_SIZE_MB = 256;
+    private static final int DEFAULT_CACHE_SIZE_KB = 64 * 1024;
+    private SQLType type;
+
+    private static SQLiteConnectionManager instance;
+
+    private SQLiteConnectionManager() {
+        type = SQLType.forName(SQLiteDatabaseService.DB_NAME);
+    }
+
+    public static synchronized SQLiteConnectionManager getInstance() {
+        if (instance == null) {
+            if(logger.isDebugEnabled()) {
+                logger.debug("::Creating new SQLite ConnectionManager ::");
+            }
+            instance = new SQLiteConnectionManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Open a new physical connection for the pool.
+     */
+    @Override
+    public Connection createConnection(DatabaseConfiguration databaseConfiguration) throws DatabaseServiceException {
+        String file = databaseConfiguration.getDatabaseName();
+        if (file == null || file.trim().isEmpty()) {
+            throw new DatabaseServiceException("No SQLite database file given");
+        }
+        String dbURL = getDatabaseUrl(databaseConfiguration);
+
+        Properties info = new Properties();
+        info.setProperty("open_mode", OPEN_READONLY);
+        info.putAll(databaseConfiguration.getConnectionProperties());
+
+        Connection connection = null;
+        try {
+            connection = type.connect(dbURL, info);
+            long mmapSize = DatabaseModuleImpl.getIntProperty("sqlite.mmapSizeMb", DEFAULT_MMAP_SIZE_MB) * 1024L * 1024L;
+            int cacheSize = DatabaseModuleImpl.getIntProperty("sqlite.cacheSizeKb", DEFAULT_CACHE_SIZE_KB);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA query_only = 1");
+                statement.execute("PRAGMA mmap_size = " + mmapSize);
+                // a negative size is in KiB rather than pages
+                statement.execute("PRAGMA cache_size = -" + cacheSize);
+            }
+            if(logger.isDebugEnabled()) {
+                logger.debug("*** Opened New  connection for ::{} **** ", dbURL);
+            }
+            return connection;
+        } catch (SQLException e) {
+            logger.error("SQLException::Couldn't get a Connection!", e);
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            throw new DatabaseServiceException(true, e.getSQLState(), e.getErrorCode(), e.getMessage());
+        }
+    }
+
+    /**
+     * The file is opened read-only and SQLite transactions are always serializable, and
+     * the driver refuses to change either on an open connection, so there is nothing to set.
+     */
+    @Override
+    public void applyJdbcSettings(Connection connection, boolean readOnly, int isolation) throws SQLException {
+    }
+
+    /**
+     * SQLite has no schemas, only attached databases, so the schema is ignored.
+     */
+    @Override
+    public void applySchema(Connection connection, DatabaseConfiguration dbConfig, String schema) throws SQLException {
+    }
+
+    @Override
+    public void applySessionSettings(Connection connection, SessionProfile profile) throws SQLException {
+    }
+
+    static File getBaseDir() {
+        String dir = DatabaseModuleImpl.getSQLiteBaseDir();
+        if (dir == null || dir.trim().isEmpty()) {
+            return new File(DatabaseUtils.getExtensionFolder(), "sqlite");
+        }
+        return new File(dir.trim());
+    }
+
+    /**
+     * The database file a name stands for, which must be inside the base directory.
+     * @param name a path, relative to the base directory or absolute
+     * @param baseDir
+     * @return the canonical file
+     * @throws DatabaseServiceException if the file is outside the base directory
+     */
+    static File resolveDatabaseFile(String name, File baseDir) throws DatabaseServiceException {
+        try {
+            File base = baseDir.getCanonicalFile();
+            File file = new File(name.trim());
+            if (!file.isAbsolute()) {
+                file = new File(base, name.trim());
+            }
+            file = file.getCanonicalFile();
+            if (!file.toPath().startsWith(base.toPath())) {
+                throw new DatabaseServiceException("SQLite database file " + name.trim()
+                        + " is outside of " + base.getPath());
+            }
+            return file;
+        } catch (IOException e) {
+            throw new DatabaseServiceException("Invalid SQLite database file " + name.trim() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The URL of the file the connection opens, resolved under the base directory.
+     * @param dbConfig
+     * @return
+     * @throws DatabaseServiceException if the file is outside the base directory
+     */
+    static String getDatabaseUrl(DatabaseConfiguration dbConfig) throws DatabaseServiceException {
+        return getDatabaseUrl(dbConfig.getDatabaseName(), getBaseDir());
+    }
+
+    static String getDatabaseUrl(String name, File baseDir) throws DatabaseServiceException {
+        return "jdbc:sqlite:" + resolveDatabaseFile(name, baseDir).getPath();
+    }
+
+}
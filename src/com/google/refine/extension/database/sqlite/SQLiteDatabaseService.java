@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.sqlite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.JdbcDatabaseService;
+import com.google.refine.extension.database.SQLType;
+import com.google.refine.extension.database.SqlDialect;
+import com.google.refine.extension.database.pool.ConnectionFactory;
+
+/**
+ * A local SQLite database file, named by the database name of the configuration;
+ * host, port and user are not used.
+ */
+public class SQLiteDatabaseService extends JdbcDatabaseService {
+
+    private static final Logger logger = LoggerFactory.getLogger("SQLiteDatabaseService");
+
+    public static final String DB_NAME = "sqlite";
+    public static final String DB_DRIVER = "org.sqlite.JDBC";
+
+    private static SQLiteDatabaseService instance;
+
+    private final SqlDialect dialect = new SQLiteDialect();
+
+    private SQLiteDatabaseService() {
+    }
+
+    public static SQLiteDatabaseService getInstance() {
+        if (instance == null) {
+            SQLType.registerSQLDriver(DB_NAME, DB_DRIVER);
+            instance = new SQLiteDatabaseService();
+            if(logger.isDebugEnabled()) {
+                logger.debug("SQLiteDatabaseService Instance: {}", instance);
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    protected ConnectionFactory getConnectionFactory() throws DatabaseServiceException {
+        return SQLiteConnectionManager.getInstance();
+    }
+
+    @Override
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * The file the connection opens; a name outside sqlite.baseDir, which cannot be
+     * opened, is shown as given.
+     */
+    @Override
+    public String getDatabaseUrl(DatabaseConfiguration dbConfig) {
+        try {
+            return SQLiteConnectionManager.getDatabaseUrl(dbConfig);
+        } catch (DatabaseServiceException e) {
+            logger.debug("SQLite database file not allowed: {}", e.getMessage());
+            return "jdbc:sqlite:" + dbConfig.getDatabaseName().trim();
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.google.refine.extension.database;
+
+import static org.mockito.Mockito.when;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ConnectionTestCacheTest {
+
+    private DatabaseConfiguration testDbConfig;
+    private DatabaseService dbService;
+    private ConnectionTestCache cache;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        testDbConfig = new DatabaseConfiguration();
+        testDbConfig.setDatabaseHost("127.0.0.1");
+        testDbConfig.setDatabaseName("testdb");
+        testDbConfig.setDatabasePassword("secret");
+        testDbConfig.setDatabasePort(5432);
+        testDbConfig.setDatabaseType("postgresql");
+        testDbConfig.setDatabaseUser("postgres");
+
+        dbService = Mockito.mock(DatabaseService.class);
+        cache = new ConnectionTestCache();
+    }
+
+    @Test
+    public void testRepeatedTestsReuseTheResult() throws Exception {
+        when(dbService.testConnection(Mockito.any(DatabaseConfiguration.class))).thenReturn(true);
+
+        Assert.assertTrue(cache.testConnection(testDbConfig, dbService));
+        Assert.assertTrue(cache.testConnection(testDbConfig, dbService));
+        Mockito.verify(dbService, Mockito.times(1)).testConnection(testDbConfig);
+
+        testDbConfig.setDatabasePassword("changed");
+        Assert.assertTrue(cache.testConnection(testDbConfig, dbService));
+        Mockito.verify(dbService, Mockito.times(2)).testConnection(testDbConfig);
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws Exception {
+        when(dbService.testConnection(Mockito.any(DatabaseConfiguration.class)))
+                .thenThrow(new DatabaseServiceException(true, "08001", 0, "Connection refused"));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.testConnection(testDbConfig, dbService);
+                Assert.fail("expected DatabaseServiceException");
+            } catch (DatabaseServiceException e) {
+                Assert.assertEquals(e.getSqlState(), "08001");
+            }
+        }
+        Mockito.verify(dbService, Mockito.times(2)).testConnection(testDbConfig);
+    }
+
+}
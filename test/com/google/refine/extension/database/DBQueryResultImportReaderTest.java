@@ -0,0 +1,84 @@
+package com.google.refine.extension.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.model.DatabaseQueryInfo;
+import com.google.refine.extension.database.mysql.MySQLDialect;
+import com.google.refine.extension.database.pool.ConnectionFactory;
+import com.google.refine.importing.ImportingJob;
+
+public class DBQueryResultImportReaderTest {
+
+  private static final String QUERY = "SELECT * FROM t";
+
+  @Test
+  public void streamedImportRunsQueryOnce() throws Exception {
+      Connection connection = Mockito.mock(Connection.class);
+
+      // the row estimate, which explains the query rather than running it
+      Statement explain = Mockito.mock(Statement.class);
+      ResultSet plan = Mockito.mock(ResultSet.class);
+      Mockito.when(connection.createStatement()).thenReturn(explain);
+      Mockito.when(explain.executeQuery("EXPLAIN " + QUERY)).thenReturn(plan);
+      Mockito.when(plan.next()).thenReturn(false);
+
+      Statement statement = Mockito.mock(Statement.class);
+      ResultSet resultSet = Mockito.mock(ResultSet.class);
+      ResultSetMetaData metadata = Mockito.mock(ResultSetMetaData.class);
+      Mockito.when(connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)).thenReturn(statement);
+      Mockito.when(statement.getResultSetType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+      Mockito.when(statement.getResultSetConcurrency()).thenReturn(ResultSet.CONCUR_READ_ONLY);
+      Mockito.when(statement.executeQuery(QUERY)).thenReturn(resultSet);
+      Mockito.when(resultSet.getMetaData()).thenReturn(metadata);
+      Mockito.when(metadata.getColumnCount()).thenReturn(1);
+      Mockito.when(metadata.getColumnName(1)).thenReturn("name");
+      Mockito.when(metadata.getColumnLabel(1)).thenReturn("name");
+      Mockito.when(metadata.getColumnType(1)).thenReturn(Types.VARCHAR);
+      Mockito.when(resultSet.next()).thenReturn(true, true, true, false);
+      Mockito.when(resultSet.getString(1)).thenReturn("a", "b", "c");
+
+      DBQueryResultImportReader reader = DatabaseImportController.createImportReader(
+              Mockito.mock(ImportingJob.class), service(), connection, "t",
+              new DatabaseQueryInfo(new DatabaseConfiguration(), QUERY), 2, DBQueryResultImportReader.MODE_STREAM, null);
+
+      List<Object> header = reader.getNextRowOfCells();
+      Assert.assertEquals(header.get(0), "name");
+      int rows = 0;
+      while (reader.getNextRowOfCells() != null) {
+          rows++;
+      }
+      reader.close();
+
+      Assert.assertEquals(rows, 3);
+      Mockito.verify(statement, Mockito.times(1)).executeQuery(QUERY);
+      Mockito.verify(statement).setFetchSize(Integer.MIN_VALUE);
+      Mockito.verify(explain, Mockito.never()).executeQuery(QUERY);
+      Mockito.verify(connection, Mockito.never()).prepareStatement(QUERY);
+  }
+
+  private static JdbcDatabaseService service() {
+      return new JdbcDatabaseService() {
+          private final SqlDialect dialect = new MySQLDialect();
+
+          @Override
+          protected ConnectionFactory getConnectionFactory() {
+              return null;
+          }
+
+          @Override
+          public SqlDialect getDialect() {
+              return dialect;
+          }
+      };
+  }
+
+}
@@ -0,0 +1,67 @@
+package com.google.refine.extension.database;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.model.DatabaseRow;
+
+public class DatabaseRowCursorTest {
+
+  @Test
+  public void readsInBatchesUntilExhausted() throws SQLException, DatabaseServiceException {
+      Statement statement = Mockito.mock(Statement.class);
+      ResultSet resultSet = Mockito.mock(ResultSet.class);
+      ResultSetMetaData metadata = Mockito.mock(ResultSetMetaData.class);
+      Mockito.when(resultSet.getMetaData()).thenReturn(metadata);
+      Mockito.when(metadata.getColumnCount()).thenReturn(2);
+      Mockito.when(resultSet.next()).thenReturn(true, true, true, false);
+      Mockito.when(resultSet.getString(1)).thenReturn("1", "2", "3");
+      Mockito.when(resultSet.getString(2)).thenReturn("a", "b", "c");
+
+      DatabaseRowCursor cursor = new DatabaseRowCursor(statement, resultSet);
+      List<DatabaseRow> first = cursor.next(2);
+      Assert.assertEquals(first.size(), 2);
+      Assert.assertEquals(first.get(1).getValues().get(1), "b");
+
+      List<DatabaseRow> second = cursor.next(2);
+      Assert.assertEquals(second.size(), 1);
+      Assert.assertEquals(second.get(0).getIndex(), 2);
+      Assert.assertEquals(second.get(0).getValues().get(0), "3");
+
+      cursor.close();
+      cursor.close();
+      Mockito.verify(resultSet, Mockito.times(1)).close();
+      Mockito.verify(statement, Mockito.times(1)).close();
+      Mockito.verify(statement, Mockito.never()).cancel();
+      Assert.assertNull(cursor.next());
+  }
+
+  @Test
+  public void earlyCloseCancelsTheQuery() throws SQLException, DatabaseServiceException {
+      Statement statement = Mockito.mock(Statement.class);
+      ResultSet resultSet = Mockito.mock(ResultSet.class);
+      ResultSetMetaData metadata = Mockito.mock(ResultSetMetaData.class);
+      Mockito.when(resultSet.getMetaData()).thenReturn(metadata);
+      Mockito.when(metadata.getColumnCount()).thenReturn(1);
+      Mockito.when(resultSet.next()).thenReturn(true);
+      Mockito.when(resultSet.getString(1)).thenReturn("1");
+
+      DatabaseRowCursor cursor = new DatabaseRowCursor(statement, resultSet);
+      Assert.assertEquals(cursor.next(10).size(), 10);
+      cursor.close();
+
+      InOrder order = Mockito.inOrder(statement, resultSet);
+      order.verify(statement).cancel();
+      order.verify(resultSet).close();
+      order.verify(statement).close();
+  }
+
+}
@@ -0,0 +1,43 @@
+package com.google.refine.extension.database;
+
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class DatabaseUtilsTest {
+
+  @Test
+  public void parseConnectionProperties() {
+      Map<String, String> properties = DatabaseUtils.parseConnectionProperties(
+              "defaultRowFetchSize=1000\r\n# comment\n\n binaryTransfer = true \nsslmode=verify-full=x\nflag");
+      Assert.assertEquals(properties.size(), 4);
+      Assert.assertEquals(properties.get("defaultRowFetchSize"), "1000");
+      Assert.assertEquals(properties.get("binaryTransfer"), "true");
+      Assert.assertEquals(properties.get("sslmode"), "verify-full=x");
+      Assert.assertEquals(properties.get("flag"), "");
+  }
+
+  @Test
+  public void formatConnectionProperties() {
+      String text = "useCompression=true\nuseCursorFetch=true";
+      Map<String, String> properties = DatabaseUtils.parseConnectionProperties(text);
+      Assert.assertEquals(DatabaseUtils.formatConnectionProperties(properties), text);
+      Assert.assertTrue(DatabaseUtils.parseConnectionProperties(null).isEmpty());
+  }
+
+  @Test
+  public void connectionPropertiesAreEncryptedAndSecretsHidden() {
+      Map<String, String> properties = DatabaseUtils.parseConnectionProperties(
+              "sslmode=verify-full\nsslpassword=s3cret\ntrustStorePassword=changeit");
+      Map<String, String> saved = DatabaseUtils.encryptConnectionProperties(properties);
+      Assert.assertNotEquals(saved.get("sslmode"), "verify-full");
+      Assert.assertNotEquals(saved.get("sslpassword"), "s3cret");
+      Assert.assertEquals(DatabaseUtils.decryptConnectionProperties(saved), properties);
+
+      Assert.assertEquals(DatabaseUtils.formatConnectionProperties(
+              DatabaseUtils.publicConnectionProperties(properties)), "sslmode=verify-full");
+      // saved before the values were encrypted
+      Assert.assertEquals(DatabaseUtils.decryptConnectionProperties(properties), properties);
+  }
+}
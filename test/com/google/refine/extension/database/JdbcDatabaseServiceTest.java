@@ -0,0 +1,112 @@
+package com.google.refine.extension.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.model.DatabaseRow;
+import com.google.refine.extension.database.pgsql.PgSQLDialect;
+import com.google.refine.extension.database.pool.ConnectionFactory;
+
+public class JdbcDatabaseServiceTest {
+
+  private static final String QUERY = "SELECT * FROM t";
+
+  private static JdbcDatabaseService service(final SqlDialect dialect) {
+      return new JdbcDatabaseService() {
+          @Override
+          protected ConnectionFactory getConnectionFactory() {
+              return null;
+          }
+
+          @Override
+          public SqlDialect getDialect() {
+              return dialect;
+          }
+      };
+  }
+
+  private static ResultSetMetaData metadata() throws SQLException {
+      ResultSetMetaData metadata = Mockito.mock(ResultSetMetaData.class);
+      Mockito.when(metadata.getColumnCount()).thenReturn(1);
+      Mockito.when(metadata.getColumnName(1)).thenReturn("id");
+      Mockito.when(metadata.getColumnLabel(1)).thenReturn("id");
+      Mockito.when(metadata.getColumnType(1)).thenReturn(Types.INTEGER);
+      return metadata;
+  }
+
+  @Test
+  public void getColumnsDescribesWithoutRunningQuery() throws Exception {
+      Connection connection = Mockito.mock(Connection.class);
+      PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+      ResultSetMetaData metadata = metadata();
+      Mockito.when(connection.prepareStatement(QUERY)).thenReturn(statement);
+      Mockito.when(statement.getMetaData()).thenReturn(metadata);
+
+      Assert.assertEquals(service(new PgSQLDialect()).getColumns(connection, QUERY).size(), 1);
+      Mockito.verify(statement, Mockito.never()).executeQuery();
+  }
+
+  @Test
+  public void keysetPageKeepsTypedKey() throws Exception {
+      Connection connection = Mockito.mock(Connection.class);
+      PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+      ResultSet resultSet = Mockito.mock(ResultSet.class);
+      ResultSetMetaData metadata = metadata();
+      Timestamp first = Timestamp.valueOf("2017-11-04 10:15:30");
+      Timestamp second = Timestamp.valueOf("2017-11-05 08:00:00");
+      SqlDialect dialect = new PgSQLDialect();
+      Mockito.when(connection.prepareStatement(dialect.buildKeysetQuery(QUERY, "created", true))).thenReturn(statement);
+      Mockito.when(statement.executeQuery()).thenReturn(resultSet);
+      Mockito.when(resultSet.getMetaData()).thenReturn(metadata);
+      Mockito.when(resultSet.next()).thenReturn(true, true, false);
+      Mockito.when(resultSet.getString(1)).thenReturn("2017-11-04 10:15:30", "2017-11-05 08:00:00");
+      Mockito.when(resultSet.getObject("created")).thenReturn(first, second);
+
+      List<DatabaseRow> rows = service(dialect).getRowsAfter(connection, QUERY, "created", Timestamp.valueOf("2017-11-01 00:00:00"), 2);
+
+      Assert.assertEquals(rows.size(), 2);
+      Assert.assertSame(rows.get(1).getKey(), second);
+      Mockito.verify(statement).setObject(1, Timestamp.valueOf("2017-11-01 00:00:00"));
+  }
+
+  @Test
+  public void pgsqlCursorOpensInsideTransaction() throws Exception {
+      Connection connection = Mockito.mock(Connection.class);
+      Statement setup = Mockito.mock(Statement.class);
+      Statement statement = Mockito.mock(Statement.class);
+      ResultSet resultSet = Mockito.mock(ResultSet.class);
+      ResultSetMetaData metadata = metadata();
+      Mockito.when(connection.getAutoCommit()).thenReturn(true);
+      Mockito.when(connection.createStatement()).thenReturn(setup);
+      Mockito.when(connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)).thenReturn(statement);
+      Mockito.when(statement.executeQuery(QUERY)).thenReturn(resultSet);
+      Mockito.when(resultSet.getMetaData()).thenReturn(metadata);
+
+      DatabaseRowCursor cursor = service(new PgSQLDialect()).openCursor(connection, QUERY, 1000);
+      Assert.assertEquals(cursor.getColumns().size(), 1);
+
+      // autocommit is off before the query runs, or the driver buffers the whole result
+      InOrder order = Mockito.inOrder(connection, statement);
+      order.verify(connection).setAutoCommit(false);
+      order.verify(statement).setFetchSize(1000);
+      order.verify(statement).executeQuery(QUERY);
+      Mockito.verify(connection, Mockito.never()).prepareStatement(QUERY);
+
+      cursor.close();
+      Mockito.verify(connection).rollback();
+      Mockito.verify(connection).setAutoCommit(true);
+  }
+
+}
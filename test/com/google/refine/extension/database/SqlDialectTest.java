@@ -0,0 +1,156 @@
+package com.google.refine.extension.database;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.mariadb.MariaDBDialect;
+import com.google.refine.extension.database.mysql.MySQLDialect;
+import com.google.refine.extension.database.pgsql.PgSQLDialect;
+
+public class SqlDialectTest {
+
+  @Test
+  public void buildLimitQuery() {
+      SqlDialect dialect = new PgSQLDialect();
+      Assert.assertEquals(dialect.buildLimitQuery(100, 0, "SELECT * FROM t;"), "SELECT * FROM t LIMIT 100 OFFSET 0;");
+      Assert.assertEquals(dialect.buildLimitQuery(null, null, "SELECT * FROM t"), "SELECT * FROM t;");
+  }
+
+  @Test
+  public void buildPagedQuery() {
+      SqlDialect dialect = new MySQLDialect();
+      Assert.assertEquals(dialect.buildPagedQuery(" SELECT * FROM t; "), "SELECT * FROM t LIMIT ? OFFSET ?");
+  }
+
+  @Test
+  public void quoteIdentifier() {
+      Assert.assertEquals(new PgSQLDialect().quoteIdentifier("a\"b"), "\"a\"\"b\"");
+      Assert.assertEquals(new MySQLDialect().quoteIdentifier("a`b"), "`a``b`");
+  }
+
+  @Test
+  public void buildKeysetQuery() {
+      SqlDialect dialect = new PgSQLDialect();
+      Assert.assertEquals(dialect.buildKeysetQuery("SELECT * FROM t;", "id", false),
+              "SELECT * FROM (SELECT * FROM t) keyset_page ORDER BY \"id\" LIMIT ?");
+      Assert.assertEquals(new MySQLDialect().buildKeysetQuery("SELECT * FROM t", "id", true),
+              "SELECT * FROM (SELECT * FROM t) keyset_page WHERE `id` > ? ORDER BY `id` LIMIT ?");
+  }
+
+  @Test
+  public void bindKeysetQuery() throws SQLException {
+      PreparedStatement first = Mockito.mock(PreparedStatement.class);
+      new PgSQLDialect().bindKeysetQuery(first, null, 100);
+      Mockito.verify(first).setInt(1, 100);
+
+      PreparedStatement next = Mockito.mock(PreparedStatement.class);
+      new PgSQLDialect().bindKeysetQuery(next, 42L, 100);
+      Mockito.verify(next).setObject(1, 42L);
+      Mockito.verify(next).setInt(2, 100);
+  }
+
+  @Test
+  public void bindKeysetQueryKeepsKeyType() throws SQLException {
+      Timestamp timestamp = Timestamp.valueOf("2017-11-04 10:15:30");
+      PreparedStatement byTime = Mockito.mock(PreparedStatement.class);
+      new PgSQLDialect().bindKeysetQuery(byTime, timestamp, 100);
+      Mockito.verify(byTime).setObject(1, timestamp);
+
+      BigDecimal decimal = new BigDecimal("12345678901234567890.5");
+      PreparedStatement byDecimal = Mockito.mock(PreparedStatement.class);
+      new MySQLDialect().bindKeysetQuery(byDecimal, decimal, 100);
+      Mockito.verify(byDecimal).setObject(1, decimal);
+  }
+
+  @Test
+  public void pgsqlStreamsInReadOnlyTransaction() throws SQLException {
+      Connection connection = Mockito.mock(Connection.class);
+      Statement statement = Mockito.mock(Statement.class);
+      Mockito.when(connection.getAutoCommit()).thenReturn(true);
+      Mockito.when(connection.createStatement()).thenReturn(statement);
+
+      SqlDialect dialect = new PgSQLDialect();
+      Assert.assertTrue(dialect.beginStreaming(connection));
+      Mockito.verify(connection).setAutoCommit(false);
+      Mockito.verify(statement).execute("SET TRANSACTION READ ONLY");
+
+      dialect.endStreaming(connection);
+      Mockito.verify(connection).rollback();
+      Mockito.verify(connection).setAutoCommit(true);
+  }
+
+  @Test
+  public void pgsqlStreamingKeepsOpenTransaction() throws SQLException {
+      Connection connection = Mockito.mock(Connection.class);
+      Mockito.when(connection.getAutoCommit()).thenReturn(false);
+
+      Assert.assertFalse(new PgSQLDialect().beginStreaming(connection));
+      Mockito.verify(connection, Mockito.never()).setAutoCommit(false);
+      Assert.assertFalse(new MySQLDialect().beginStreaming(connection));
+  }
+
+  @Test
+  public void mysqlStreamsRowByRow() throws SQLException {
+      Statement statement = Mockito.mock(Statement.class);
+      Mockito.when(statement.getResultSetType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+      Mockito.when(statement.getResultSetConcurrency()).thenReturn(ResultSet.CONCUR_READ_ONLY);
+
+      new MySQLDialect().configureStreaming(statement, 1000);
+      Mockito.verify(statement).setFetchSize(Integer.MIN_VALUE);
+  }
+
+  @Test
+  public void mysqlOnlyStreamsCursors() throws SQLException {
+      Statement statement = Mockito.mock(Statement.class);
+      Mockito.when(statement.getResultSetType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+      Mockito.when(statement.getResultSetConcurrency()).thenReturn(ResultSet.CONCUR_READ_ONLY);
+
+      new MySQLDialect().configureFetch(statement, 10);
+      Mockito.verify(statement).setFetchSize(10);
+      Mockito.verify(statement, Mockito.never()).setFetchSize(Integer.MIN_VALUE);
+  }
+
+  @Test
+  public void mariadbUsesFetchSize() throws SQLException {
+      Statement statement = Mockito.mock(Statement.class);
+      Mockito.when(statement.getResultSetType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+      Mockito.when(statement.getResultSetConcurrency()).thenReturn(ResultSet.CONCUR_READ_ONLY);
+
+      new MariaDBDialect().configureStreaming(statement, 1000);
+      Mockito.verify(statement).setFetchSize(1000);
+  }
+
+  @Test
+  public void estimateRowCountFromPlan() throws SQLException {
+      Connection connection = Mockito.mock(Connection.class);
+      Statement statement = Mockito.mock(Statement.class);
+      ResultSet plan = Mockito.mock(ResultSet.class);
+      Mockito.when(connection.createStatement()).thenReturn(statement);
+      Mockito.when(statement.executeQuery("EXPLAIN SELECT * FROM t")).thenReturn(plan);
+      Mockito.when(plan.next()).thenReturn(true);
+      Mockito.when(plan.getString(1)).thenReturn("Seq Scan on t  (cost=0.00..35.50 rows=2550 width=4)");
+
+      Assert.assertEquals(new PgSQLDialect().estimateRowCount(connection, "SELECT * FROM t;"), 2550);
+  }
+
+  @Test
+  public void estimateRowCountWithoutPlan() throws SQLException {
+      Connection connection = Mockito.mock(Connection.class);
+      Statement statement = Mockito.mock(Statement.class);
+      ResultSet plan = Mockito.mock(ResultSet.class);
+      Mockito.when(connection.createStatement()).thenReturn(statement);
+      Mockito.when(statement.executeQuery("EXPLAIN SELECT * FROM t")).thenReturn(plan);
+      Mockito.when(plan.next()).thenReturn(false);
+
+      Assert.assertEquals(new MySQLDialect().estimateRowCount(connection, "SELECT * FROM t"), -1);
+  }
+}
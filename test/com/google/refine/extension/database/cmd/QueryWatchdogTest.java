@@ -0,0 +1,87 @@
+package com.google.refine.extension.database.cmd;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.DatabaseServiceException;
+
+
+public class QueryWatchdogTest {
+
+    @Test
+    public void returnsTheResultOfTheWork() throws Exception {
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        StringWriter body = new StringWriter();
+        Mockito.when(response.getWriter()).thenReturn(new PrintWriter(body));
+
+        String result = QueryWatchdog.run(new Callable<String>() {
+            @Override
+            public String call() {
+                return Thread.currentThread().getName();
+            }
+        }, response);
+
+        Assert.assertTrue(result.startsWith("database-query-"));
+        // a quick query leaves the response alone
+        Assert.assertEquals(body.toString(), "");
+    }
+
+    @Test
+    public void rethrowsDatabaseServiceException() {
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        try {
+            QueryWatchdog.run(new Callable<String>() {
+                @Override
+                public String call() throws DatabaseServiceException {
+                    throw new DatabaseServiceException(true, "42P01", 0, "relation does not exist");
+                }
+            }, response);
+            Assert.fail("expected a DatabaseServiceException");
+        } catch (DatabaseServiceException e) {
+            Assert.assertEquals(e.getSqlState(), "42P01");
+        }
+    }
+
+    @Test
+    public void abandonsWorkThatIgnoresTheCancel() throws Exception {
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(response.getWriter()).thenThrow(new IOException("Broken pipe"));
+        final CountDownLatch release = new CountDownLatch(1);
+
+        long start = System.currentTimeMillis();
+        try {
+            QueryWatchdog.run(new Callable<String>() {
+                @Override
+                public String call() {
+                    // a driver stuck on the network, deaf to cancel and interrupt
+                    while (true) {
+                        try {
+                            if (release.await(5, TimeUnit.SECONDS)) {
+                                return "done";
+                            }
+                        } catch (InterruptedException e) {
+                            // ignored
+                        }
+                    }
+                }
+            }, response, 0, 100, 300);
+            Assert.fail("expected a DatabaseServiceException");
+        } catch (DatabaseServiceException e) {
+            Assert.assertTrue(e.getMessage().contains("client disconnected"));
+        } finally {
+            release.countDown();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.generic;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.SqlDialect;
+import com.google.refine.extension.database.mariadb.MariaDBDialect;
+import com.google.refine.extension.database.mysql.MySQLDialect;
+import com.google.refine.extension.database.pgsql.PgSQLDialect;
+
+public class GenericJdbcDatabaseServiceTest {
+
+    @Test
+    public void detectDialect() {
+        Assert.assertTrue(GenericJdbcDatabaseService.detectDialect("PostgreSQL") instanceof PgSQLDialect);
+        Assert.assertTrue(GenericJdbcDatabaseService.detectDialect("MariaDB") instanceof MariaDBDialect);
+        Assert.assertTrue(GenericJdbcDatabaseService.detectDialect("MySQL") instanceof MySQLDialect);
+        Assert.assertTrue(GenericJdbcDatabaseService.detectDialect("Apache Derby") instanceof OffsetFetchDialect);
+        Assert.assertTrue(GenericJdbcDatabaseService.detectDialect(null) instanceof OffsetFetchDialect);
+
+        SqlDialect h2 = GenericJdbcDatabaseService.detectDialect("H2");
+        Assert.assertFalse(h2 instanceof OffsetFetchDialect);
+        Assert.assertEquals(h2.buildPagedQuery("SELECT * FROM t"), "SELECT * FROM t LIMIT ? OFFSET ?");
+        Assert.assertSame(GenericJdbcDatabaseService.detectDialect("HSQL Database Engine"), h2);
+    }
+
+    @Test
+    public void dialectOfConnection() throws SQLException {
+        Connection connection = Mockito.mock(Connection.class);
+        DatabaseMetaData metadata = Mockito.mock(DatabaseMetaData.class);
+        Mockito.when(connection.getMetaData()).thenReturn(metadata);
+        Mockito.when(metadata.getDatabaseProductName()).thenReturn("Apache Derby");
+
+        Assert.assertTrue(GenericJdbcDatabaseService.getInstance().getDialect(connection) instanceof OffsetFetchDialect);
+    }
+
+    @Test
+    public void offsetFetchQueries() throws SQLException {
+        OffsetFetchDialect dialect = new OffsetFetchDialect();
+        Assert.assertEquals(dialect.buildLimitQuery(100, 0, "SELECT * FROM t;"),
+                "SELECT * FROM t OFFSET 0 ROWS FETCH NEXT 100 ROWS ONLY");
+        Assert.assertEquals(dialect.buildLimitQuery(100, null, "SELECT * FROM t"),
+                "SELECT * FROM t FETCH FIRST 100 ROWS ONLY");
+        Assert.assertEquals(dialect.buildPagedQuery("SELECT * FROM t"),
+                "SELECT * FROM t OFFSET ? ROWS FETCH NEXT ? ROWS ONLY");
+
+        PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+        dialect.bindPagedQuery(statement, 100, 200);
+        Mockito.verify(statement).setInt(1, 200);
+        Mockito.verify(statement).setInt(2, 100);
+    }
+
+    @Test
+    public void offsetFetchKeysetQuery() {
+        Assert.assertEquals(new OffsetFetchDialect().buildKeysetQuery("SELECT * FROM t", "id", true),
+                "SELECT * FROM (SELECT * FROM t) keyset_page WHERE \"id\" > ? ORDER BY \"id\" OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY");
+    }
+
+    @Test
+    public void subProtocol() {
+        Assert.assertEquals(GenericJdbcConnectionManager.getSubProtocol("jdbc:h2:tcp://localhost/~/test"), "jdbc:h2");
+        Assert.assertEquals(GenericJdbcConnectionManager.getSubProtocol("jdbc:derby:memory:db;create=true"), "jdbc:derby");
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.DatabaseServiceException;
+
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("db1:5432", 2, 60000, 1);
+
+        breaker.acquire();
+        breaker.recordFailure();
+        breaker.acquire();
+        breaker.recordSuccess();
+        breaker.acquire();
+        breaker.recordFailure();
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+
+        breaker.acquire();
+        breaker.recordFailure();
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        Assert.assertTrue(breaker.getRetryIn() > 0);
+        try {
+            breaker.acquire();
+            Assert.fail("expected DatabaseServiceException");
+        } catch (DatabaseServiceException e) {
+            Assert.assertTrue(CircuitBreaker.isConnectionFailure(e));
+        }
+        Assert.assertEquals(breaker.getRejected(), 1);
+    }
+
+    @Test
+    public void testHalfOpenTrial() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("db1:5432", 1, 0, 1);
+        breaker.acquire();
+        breaker.recordFailure();
+
+        // open time is over: one trial goes through, the next is rejected
+        breaker.acquire();
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        try {
+            breaker.acquire();
+            Assert.fail("expected DatabaseServiceException");
+        } catch (DatabaseServiceException e) {
+            // expected
+        }
+
+        // a trial failing for another reason gives its place back
+        breaker.recordIgnored();
+        breaker.acquire();
+        breaker.recordSuccess();
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testFailedTrialReopens() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("db1:5432", 1, 0, 1);
+        breaker.acquire();
+        breaker.recordFailure();
+        breaker.acquire();
+        breaker.recordFailure();
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void testOnlyConnectionFailuresCount() {
+        Assert.assertTrue(CircuitBreaker.isConnectionFailure(new DatabaseServiceException(true, "08001", 0, "refused")));
+        Assert.assertFalse(CircuitBreaker.isConnectionFailure(new DatabaseServiceException(true, "28P01", 0, "bad password")));
+        Assert.assertFalse(CircuitBreaker.isConnectionFailure(new DatabaseServiceException("pool exhausted")));
+    }
+
+}
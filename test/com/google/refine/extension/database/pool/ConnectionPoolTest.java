@@ -0,0 +1,577 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseServiceException;
+import com.google.refine.extension.database.SessionProfile;
+
+
+public class ConnectionPoolTest {
+
+    private DatabaseConfiguration testDbConfig;
+    private List<Connection> opened;
+    private ConnectionFactory factory;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        testDbConfig = new DatabaseConfiguration();
+        testDbConfig.setDatabaseHost("127.0.0.1");
+        testDbConfig.setDatabaseName("testdb");
+        testDbConfig.setDatabasePassword("secret");
+        testDbConfig.setDatabasePort(3306);
+        testDbConfig.setDatabaseType("mysql");
+        testDbConfig.setDatabaseUser("root");
+
+        opened = new ArrayList<Connection>();
+        factory = new ConnectionFactory() {
+            @Override
+            public Connection createConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException {
+                Connection conn = Mockito.mock(Connection.class);
+                try {
+                    when(conn.isValid(Mockito.anyInt())).thenReturn(true);
+                    when(conn.getAutoCommit()).thenReturn(true);
+                    when(conn.prepareStatement(Mockito.anyString())).thenAnswer(new Answer<PreparedStatement>() {
+                        @Override
+                        public PreparedStatement answer(InvocationOnMock invocation) {
+                            return Mockito.mock(PreparedStatement.class);
+                        }
+                    });
+                } catch (SQLException e) {
+                    throw new DatabaseServiceException(e.getMessage());
+                }
+                opened.add(conn);
+                return conn;
+            }
+        };
+    }
+
+    private ConnectionPool newPool(int minSize, int maxSize) {
+        return newPool(minSize, maxSize, new ConnectionLimiter(100, 100));
+    }
+
+    private ConnectionPool newPool(int minSize, int maxSize, ConnectionLimiter limiter) {
+        return new ConnectionPool(new ConnectionPoolKey(testDbConfig), testDbConfig, factory, limiter, minSize, maxSize, 100, 1, 2);
+    }
+
+    @Test
+    public void testBorrowReusesReturnedConnection() throws Exception {
+        ConnectionPool pool = newPool(1, 2);
+
+        Connection first = pool.borrow();
+        first.close();
+        Connection second = pool.borrow();
+
+        Assert.assertEquals(opened.size(), 1);
+        Assert.assertEquals(pool.getActiveCount(), 1);
+        Assert.assertTrue(first.isClosed());
+        Assert.assertFalse(second.isClosed());
+        second.close();
+        Assert.assertEquals(pool.getIdleCount(), 1);
+    }
+
+    @Test
+    public void testMinSizeOpenedOnFirstBorrow() throws Exception {
+        ConnectionPool pool = newPool(3, 5);
+
+        Connection conn = pool.borrow();
+
+        Assert.assertEquals(opened.size(), 3);
+        Assert.assertEquals(pool.getIdleCount(), 2);
+        conn.close();
+    }
+
+    @Test
+    public void testFillDoesNotExceedMaxSize() throws Exception {
+        final ConnectionFactory plain = factory;
+        final ConnectionPool[] holder = new ConnectionPool[1];
+        final List<Connection> concurrent = new ArrayList<Connection>();
+        factory = new ConnectionFactory() {
+            @Override
+            public Connection createConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException {
+                if (opened.isEmpty()) {
+                    // a second borrower gets in while the first is still connecting
+                    opened.add(null);
+                    concurrent.add(holder[0].borrow());
+                    opened.remove(0);
+                }
+                return plain.createConnection(dbConfig);
+            }
+        };
+        ConnectionPool pool = newPool(2, 2);
+        holder[0] = pool;
+
+        Connection first = pool.borrow();
+
+        Assert.assertEquals(opened.size(), 2);
+        Assert.assertEquals(pool.getActiveCount() + pool.getIdleCount(), 2);
+        first.close();
+        concurrent.get(0).close();
+    }
+
+    @Test
+    public void testWarmUpRunsOffTheBorrowerThread() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        ConnectionPool pool = newPool(3, 3);
+        pool.setWarmUpExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        Connection first = pool.borrow();
+        Assert.assertEquals(opened.size(), 1);
+        Assert.assertEquals(tasks.size(), 1);
+
+        tasks.get(0).run();
+        Assert.assertEquals(opened.size(), 3);
+        Assert.assertEquals(pool.getIdleCount(), 2);
+        first.close();
+        Assert.assertEquals(tasks.size(), 1);
+    }
+
+    @Test(expectedExceptions = DatabaseServiceException.class)
+    public void testBorrowTimesOutWhenExhausted() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+        pool.borrow();
+        pool.borrow();
+    }
+
+    @Test
+    public void testInvalidIdleConnectionIsDiscarded() throws Exception {
+        ConnectionPool pool = newPool(1, 2);
+        Connection conn = pool.borrow();
+        conn.close();
+        when(opened.get(0).isValid(Mockito.anyInt())).thenReturn(false);
+
+        Thread.sleep(600);
+        pool.borrow();
+
+        Assert.assertEquals(opened.size(), 2);
+        Mockito.verify(opened.get(0)).close();
+    }
+
+    @Test
+    public void testHostKeyOfFailoverList() throws Exception {
+        Assert.assertEquals(new ConnectionPoolKey(testDbConfig).getHostKey(),
+                new HostAddress("127.0.0.1", 3306).toString());
+
+        DatabaseConfiguration failover = new DatabaseConfiguration();
+        failover.setDatabaseHost("DB1, db2:3307");
+        failover.setDatabasePort(3306);
+        Assert.assertEquals(new ConnectionPoolKey(failover).getHostKey(), "db1:3306,db2:3307");
+
+        // a failover list is one bucket of the limiter, whichever of its hosts answers
+        ConnectionLimiter limiter = new ConnectionLimiter(10, 1);
+        String host = new ConnectionPoolKey(failover).getHostKey();
+        Assert.assertTrue(limiter.acquire(host, 0));
+        Assert.assertFalse(limiter.acquire(host, 0));
+        // and is counted apart from a configuration naming one of its hosts alone
+        Assert.assertTrue(limiter.acquire("db1:3306", 0));
+    }
+
+    @Test
+    public void testSameConfigurationSharesKey() {
+        DatabaseConfiguration other = new DatabaseConfiguration();
+        other.setDatabaseHost("127.0.0.1");
+        other.setDatabaseName("testdb");
+        other.setDatabasePassword("secret");
+        other.setDatabasePort(3306);
+        other.setDatabaseType("MySQL");
+        other.setDatabaseUser("root");
+
+        Assert.assertEquals(new ConnectionPoolKey(other), new ConnectionPoolKey(testDbConfig));
+
+        other.setDatabasePassword("wrong");
+        Assert.assertNotEquals(new ConnectionPoolKey(other), new ConnectionPoolKey(testDbConfig));
+
+        other.setDatabasePassword("secret");
+        other.getConnectionProperties().put("useCompression", "true");
+        Assert.assertNotEquals(new ConnectionPoolKey(other), new ConnectionPoolKey(testDbConfig));
+    }
+
+    @Test
+    public void testLeasesAreIsolatedPerOwner() throws Exception {
+        ConnectionPool pool = newPool(1, 2);
+        ConnectionLeaseRegistry registry = ConnectionLeaseRegistry.getInstance();
+
+        ConnectionLease first = registry.lease("import-job-1", pool.borrow());
+        ConnectionLease second = registry.lease("import-job-2", pool.borrow());
+        first.close();
+
+        Assert.assertTrue(first.getConnection().isClosed());
+        Assert.assertFalse(second.getConnection().isClosed());
+        Assert.assertTrue(registry.getLeases("import-job-1").isEmpty());
+        Assert.assertEquals(registry.getLeases("import-job-2"), Arrays.asList(second));
+        Assert.assertEquals(pool.getActiveCount(), 1);
+
+        registry.release("import-job-2");
+        Assert.assertEquals(pool.getActiveCount(), 0);
+    }
+
+    @Test
+    public void testLeasesOfSameOwnerAreIndependent() throws Exception {
+        ConnectionPool pool = newPool(1, 2);
+        ConnectionLeaseRegistry registry = ConnectionLeaseRegistry.getInstance();
+
+        // e.g. a preview still streaming while the same job creates its project
+        ConnectionLease preview = registry.lease("import-job-3", pool.borrow());
+        ConnectionLease create = registry.lease("import-job-3", pool.borrow());
+
+        Assert.assertFalse(preview.isReleased());
+        Assert.assertFalse(preview.getConnection().isClosed());
+        Assert.assertEquals(registry.getLeases("import-job-3"), Arrays.asList(preview, create));
+        Assert.assertEquals(pool.getActiveCount(), 2);
+
+        preview.close();
+        Assert.assertFalse(create.isReleased());
+        Assert.assertEquals(pool.getActiveCount(), 1);
+
+        registry.release("import-job-3");
+        Assert.assertTrue(create.isReleased());
+        Assert.assertEquals(pool.getActiveCount(), 0);
+    }
+
+    @Test
+    public void testMaintainEvictsExpiredConnectionsAboveMinSize() throws Exception {
+        ConnectionPool pool = newPool(1, 3);
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        Connection third = pool.borrow();
+        first.close();
+        second.close();
+        third.close();
+
+        Thread.sleep(50);
+        // the pool is still in use, only its surplus connections expire
+        pool.borrow().close();
+        pool.maintain(10);
+
+        Assert.assertEquals(pool.getIdleCount(), 1);
+        Assert.assertEquals(opened.size(), 3);
+    }
+
+    @Test
+    public void testUnusedPoolShrinksToZeroAndRetires() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(10, 10);
+        ConnectionPool pool = newPool(2, 3, limiter);
+        pool.borrow().close();
+        Assert.assertFalse(pool.retireIfUnused(10));
+
+        Thread.sleep(50);
+        pool.maintain(10);
+
+        Assert.assertEquals(pool.getIdleCount(), 0);
+        Assert.assertEquals(opened.size(), 2);
+        Assert.assertEquals(limiter.getOpenCount(), 0);
+        Assert.assertTrue(pool.retireIfUnused(10));
+        Assert.assertTrue(pool.isClosed());
+    }
+
+    @Test
+    public void testMaintainReplacesBrokenConnection() throws Exception {
+        ConnectionPool pool = newPool(1, 2);
+        pool.borrow().close();
+        when(opened.get(0).isValid(Mockito.anyInt())).thenReturn(false);
+
+        pool.maintain(0);
+
+        Mockito.verify(opened.get(0)).close();
+        Assert.assertEquals(opened.size(), 2);
+        Assert.assertEquals(pool.getIdleCount(), 1);
+    }
+
+    @Test
+    public void testPreparedStatementsAreCachedPerConnection() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+        String query = "SELECT * FROM test_table LIMIT ? OFFSET ?";
+
+        Connection conn = pool.borrow();
+        PreparedStatement first = conn.prepareStatement(query);
+        first.close();
+        conn.close();
+
+        conn = pool.borrow();
+        PreparedStatement second = conn.prepareStatement(query);
+        PreparedStatement concurrent = conn.prepareStatement(query);
+
+        Assert.assertTrue(first.isClosed());
+        Assert.assertFalse(second.isClosed());
+        Assert.assertEquals(pool.getStatementCacheHits(), 1);
+        Assert.assertEquals(pool.getStatementCacheMisses(), 2);
+        Mockito.verify(opened.get(0), Mockito.times(2)).prepareStatement(query);
+        second.close();
+        concurrent.close();
+        conn.close();
+    }
+
+    @Test
+    public void testReconfiguredStatementIsNotCached() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+        String query = "SELECT * FROM test_table";
+
+        Connection conn = pool.borrow();
+        PreparedStatement first = conn.prepareStatement(query);
+        first.setFetchSize(Integer.MIN_VALUE);
+        first.setMaxRows(1);
+        first.close();
+        PreparedStatement second = conn.prepareStatement(query);
+
+        Assert.assertEquals(pool.getStatementCacheHits(), 0);
+        Assert.assertEquals(pool.getStatementCacheMisses(), 2);
+        Mockito.verify(opened.get(0), Mockito.times(2)).prepareStatement(query);
+        second.close();
+        conn.close();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedStatementIsEvicted() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+        Connection conn = pool.borrow();
+
+        conn.prepareStatement("SELECT 1").close();
+        conn.prepareStatement("SELECT 2").close();
+        conn.prepareStatement("SELECT 3").close();
+        conn.prepareStatement("SELECT 1").close();
+
+        Assert.assertEquals(pool.getStatementCacheHits(), 0);
+        Assert.assertEquals(pool.getStatementCacheMisses(), 4);
+        conn.close();
+    }
+
+    @Test
+    public void testHostLimitIsSharedBetweenPools() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(10, 1);
+        ConnectionPool pool = newPool(0, 5, limiter);
+        testDbConfig.setDatabaseUser("other");
+        ConnectionPool otherPool = newPool(0, 5, limiter);
+
+        pool.borrow().close();
+        try {
+            otherPool.borrow();
+            Assert.fail("host limit not enforced");
+        } catch (DatabaseServiceException e) {
+            // expected, the idle connection of the first pool holds the only slot
+        }
+        Assert.assertEquals(limiter.getOpenCount("127.0.0.1:3306"), 1);
+
+        pool.close();
+        Assert.assertEquals(limiter.getOpenCount(), 0);
+        otherPool.borrow().close();
+        Assert.assertEquals(opened.size(), 2);
+    }
+
+    @Test
+    public void testIdleConnectionsOfOtherPoolsAreReclaimed() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(10, 3);
+        final List<ConnectionPool> pools = new ArrayList<ConnectionPool>();
+        limiter.setIdleReclaimer(new ConnectionLimiter.IdleReclaimer() {
+            @Override
+            public boolean reclaim(String host) {
+                for (ConnectionPool pool : pools) {
+                    if (pool.evictIdle()) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            testDbConfig.setDatabaseName("testdb" + i);
+            ConnectionPool pool = newPool(1, 5, limiter);
+            pools.add(pool);
+            pool.borrow().close();
+        }
+
+        Assert.assertEquals(opened.size(), 5);
+        Assert.assertEquals(limiter.getOpenCount("127.0.0.1:3306"), 3);
+        Assert.assertEquals(pools.get(0).getIdleCount(), 0);
+        Assert.assertEquals(pools.get(4).getIdleCount(), 1);
+    }
+
+    @Test
+    public void testFailedConnectReleasesSlot() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(1, 1);
+        factory = new ConnectionFactory() {
+            @Override
+            public Connection createConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException {
+                throw new DatabaseServiceException("refused");
+            }
+        };
+        ConnectionPool pool = newPool(0, 1, limiter);
+        try {
+            pool.borrow();
+            Assert.fail("connect failure not reported");
+        } catch (DatabaseServiceException e) {
+            Assert.assertEquals(limiter.getOpenCount(), 0);
+        }
+    }
+
+    @Test
+    public void testLeakedStatementsAreClosedOnReturn() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+        pool.setLeakDetection(true);
+        Connection conn = pool.borrow();
+        Statement physicalStatement = Mockito.mock(Statement.class);
+        ResultSet physicalResult = Mockito.mock(ResultSet.class);
+        when(opened.get(0).createStatement()).thenReturn(physicalStatement);
+        when(physicalStatement.executeQuery(Mockito.anyString())).thenReturn(physicalResult);
+
+        Statement statement = conn.createStatement();
+        ResultSet result = statement.executeQuery("SELECT 1");
+        Assert.assertSame(statement.getConnection(), conn);
+        Assert.assertSame(result.getStatement(), statement);
+        conn.close();
+
+        Assert.assertTrue(result.isClosed());
+        Assert.assertTrue(statement.isClosed());
+        Mockito.verify(physicalResult).close();
+        Mockito.verify(physicalStatement).close();
+        Assert.assertEquals(pool.getLeakedResources(), 2);
+    }
+
+    @Test
+    public void testClosedStatementsAreNotReportedAsLeaks() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+        Connection conn = pool.borrow();
+        when(opened.get(0).createStatement()).thenReturn(Mockito.mock(Statement.class));
+
+        conn.createStatement().close();
+        conn.prepareStatement("SELECT 1").close();
+        conn.close();
+
+        Assert.assertEquals(pool.getLeakedResources(), 0);
+    }
+
+    @Test
+    public void testResultSetsCloseWithTheirStatement() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+        pool.setLeakDetection(true);
+        Connection conn = pool.borrow();
+        Statement physicalStatement = Mockito.mock(Statement.class);
+        when(opened.get(0).createStatement()).thenReturn(physicalStatement);
+        when(physicalStatement.executeQuery(Mockito.anyString()))
+                .thenReturn(Mockito.mock(ResultSet.class), Mockito.mock(ResultSet.class));
+        ActiveStatementRegistry registry = ActiveStatementRegistry.getInstance();
+        int before = registry.getActiveStatements().size();
+
+        Statement statement = conn.createStatement();
+        ResultSet first = statement.executeQuery("SELECT 1");
+        // executing again closes the previous result
+        ResultSet second = statement.executeQuery("SELECT 2");
+        Assert.assertTrue(first.isClosed());
+        Assert.assertEquals(registry.getActiveStatements().size(), before + 1);
+
+        statement.close();
+        Assert.assertTrue(second.isClosed());
+        Assert.assertEquals(registry.getActiveStatements().size(), before);
+        conn.close();
+        Assert.assertEquals(pool.getLeakedResources(), 0);
+    }
+
+    @Test
+    public void testSessionProfileIsAppliedOncePerChange() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+
+        pool.borrow(SessionProfile.forImport()).close();
+        pool.borrow(SessionProfile.forImport()).close();
+        Connection physical = opened.get(0);
+        Mockito.verify(physical, Mockito.times(1)).setReadOnly(true);
+        Mockito.verify(physical, Mockito.times(1)).setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+
+        pool.borrow().close();
+        Mockito.verify(physical, Mockito.times(1)).setReadOnly(false);
+        Assert.assertEquals(opened.size(), 1);
+    }
+
+    @Test
+    public void testSchemaIsAppliedOncePerChange() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+
+        pool.borrow(null, "sales").close();
+        pool.borrow(null, "sales").close();
+        Connection physical = opened.get(0);
+        Mockito.verify(physical, Mockito.times(1)).setSchema("sales");
+
+        pool.borrow(null, "hr").close();
+        Mockito.verify(physical, Mockito.times(1)).setSchema("hr");
+        Assert.assertEquals(opened.size(), 1);
+    }
+
+    @Test
+    public void testActiveStatementsAreListedUntilClosed() throws Exception {
+        ConnectionPool pool = newPool(1, 1);
+        Connection conn = pool.borrow();
+        Statement physicalStatement = Mockito.mock(Statement.class);
+        ResultSet physicalResult = Mockito.mock(ResultSet.class);
+        when(opened.get(0).createStatement()).thenReturn(physicalStatement);
+        when(physicalStatement.executeQuery("SELECT * FROM big")).thenReturn(physicalResult);
+        when(physicalResult.next()).thenReturn(true, true, false);
+        ActiveStatementRegistry registry = ActiveStatementRegistry.getInstance();
+        int before = registry.getActiveStatements().size();
+
+        ResultSet rs = conn.createStatement().executeQuery("SELECT * FROM big");
+        rs.next();
+        rs.next();
+        List<ActiveStatementRegistry.ActiveStatement> active = registry.getActiveStatements();
+        Assert.assertEquals(active.size(), before + 1);
+        ActiveStatementRegistry.ActiveStatement running = active.get(active.size() - 1);
+        Assert.assertEquals(running.getSql(), "SELECT * FROM big");
+        Assert.assertEquals(running.getRowsFetched(), 2);
+        Assert.assertSame(running.getConnection(), conn);
+
+        Assert.assertTrue(registry.cancel(running.getId()));
+        Mockito.verify(physicalStatement).cancel();
+
+        rs.close();
+        Assert.assertNull(registry.get(running.getId()));
+        conn.close();
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.DatabaseServiceException;
+
+public class ParallelConnectorTest {
+
+    private static final HostAddress DEAD = new HostAddress("dead", 5432);
+    private static final HostAddress SLOW = new HostAddress("slow", 5432);
+    private static final HostAddress LIVE = new HostAddress("live", 5432);
+
+    private ParallelConnector connector;
+    private List<HostAddress> tried;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        connector = new ParallelConnector();
+        tried = Collections.synchronizedList(new ArrayList<HostAddress>());
+    }
+
+    private ParallelConnector.HostConnector hosts() {
+        return new ParallelConnector.HostConnector() {
+            @Override
+            public Connection connect(HostAddress address) throws SQLException {
+                tried.add(address);
+                if (address.equals(DEAD)) {
+                    throw new SQLException("Connection refused", "08001");
+                }
+                if (address.equals(SLOW)) {
+                    try {
+                        Thread.sleep(2000);
+                    } catch (InterruptedException e) {
+                        // a driver would ignore it too
+                    }
+                }
+                return Mockito.mock(Connection.class);
+            }
+        };
+    }
+
+    @Test
+    public void testParse() {
+        Assert.assertEquals(HostAddress.parse("db1:5433", 5432), new HostAddress("db1", 5433));
+        Assert.assertEquals(HostAddress.parse(" db2 ", 5432), new HostAddress("db2", 5432));
+        Assert.assertEquals(HostAddress.parse("::1", 5432), new HostAddress("::1", 5432));
+        Assert.assertEquals(HostAddress.parseList("db1, db2:5433", 5432),
+                Arrays.asList(new HostAddress("db1", 5432), new HostAddress("db2", 5433)));
+    }
+
+    @Test
+    public void testSlowHostDoesNotBlockTheNext() throws Exception {
+        long start = System.currentTimeMillis();
+        Connection connection = connector.connect(Arrays.asList(SLOW, LIVE), hosts());
+
+        Assert.assertNotNull(connection);
+        Assert.assertTrue(System.currentTimeMillis() - start < 1500);
+        Assert.assertEquals(tried, Arrays.asList(SLOW, LIVE));
+    }
+
+    @Test
+    public void testRecentFailuresAreTriedLast() throws Exception {
+        connector.connect(Arrays.asList(DEAD, LIVE), hosts());
+        Assert.assertEquals(connector.order(Arrays.asList(DEAD, LIVE)), Arrays.asList(LIVE, DEAD));
+
+        tried.clear();
+        connector.connect(Arrays.asList(DEAD, LIVE), hosts());
+        Assert.assertEquals(tried, Arrays.asList(LIVE));
+    }
+
+    @Test
+    public void testAllHostsFail() throws Exception {
+        try {
+            connector.connect(Arrays.asList(DEAD, SLOW, LIVE), new ParallelConnector.HostConnector() {
+                @Override
+                public Connection connect(HostAddress address) throws SQLException {
+                    throw new SQLException("Connection refused to " + address, "08001");
+                }
+            });
+            Assert.fail("expected SQLException");
+        } catch (SQLException e) {
+            Assert.assertEquals(e.getSQLState(), "08001");
+            Assert.assertEquals(e.getSuppressed().length, 2);
+        }
+    }
+
+    @Test
+    public void testRuntimeFailureIsRethrownAsIs() throws Exception {
+        try {
+            connector.connect(Arrays.asList(DEAD, LIVE), new ParallelConnector.HostConnector() {
+                @Override
+                public Connection connect(HostAddress address) {
+                    throw new IllegalStateException("Driver not initialized for " + address);
+                }
+            });
+            Assert.fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getSuppressed().length, 1);
+        }
+    }
+
+    @Test
+    public void testBreakerIsKeptPerHostTried() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                connector.connect(Collections.singletonList(DEAD), hosts());
+                Assert.fail("expected SQLException");
+            } catch (SQLException e) {
+                Assert.assertEquals(e.getSQLState(), "08001");
+            }
+        }
+        Assert.assertEquals(connector.getCircuitBreaker(DEAD).getState(), CircuitBreaker.State.OPEN);
+
+        // in a host list, the open host is skipped and the failure counts for the host tried
+        tried.clear();
+        try {
+            connector.connect(Arrays.asList(DEAD, SLOW), new ParallelConnector.HostConnector() {
+                @Override
+                public Connection connect(HostAddress address) throws SQLException {
+                    tried.add(address);
+                    throw new SQLException("Connection refused to " + address, "08001");
+                }
+            });
+            Assert.fail("expected SQLException");
+        } catch (SQLException e) {
+            Assert.assertEquals(e.getSuppressed().length, 1);
+        }
+        Assert.assertEquals(tried, Arrays.asList(SLOW));
+        Assert.assertEquals(connector.getCircuitBreaker(DEAD).getRejected(), 1);
+        Assert.assertEquals(connector.getCircuitBreaker(DEAD).getFailures(), 3);
+        Assert.assertEquals(connector.getCircuitBreaker(SLOW).getFailures(), 1);
+
+        try {
+            connector.connect(Collections.singletonList(DEAD), hosts());
+            Assert.fail("expected DatabaseServiceException");
+        } catch (DatabaseServiceException e) {
+            Assert.assertEquals(e.getSqlState(), "08004");
+        }
+    }
+
+}
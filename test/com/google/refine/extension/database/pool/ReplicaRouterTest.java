@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.pool;
+
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.DatabaseConfiguration;
+import com.google.refine.extension.database.DatabaseServiceException;
+
+
+public class ReplicaRouterTest {
+
+    private DatabaseConfiguration testDbConfig;
+    private Map<String, Long> lags;
+    private ConnectionPoolManager poolManager;
+    private ReplicaRouter router;
+    private ConnectionFactory factory;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        testDbConfig = new DatabaseConfiguration();
+        testDbConfig.setConnectionName("analytics");
+        testDbConfig.setDatabaseHost("primary");
+        testDbConfig.setDatabaseName("testdb");
+        testDbConfig.setDatabasePassword("secret");
+        testDbConfig.setDatabasePort(5432);
+        testDbConfig.setDatabaseType("postgresql");
+        testDbConfig.setDatabaseUser("postgres");
+        testDbConfig.setReplicaHosts(Arrays.asList("replica-a", "replica-b:5433"));
+
+        lags = new HashMap<String, Long>();
+        poolManager = ConnectionPoolManager.getInstance();
+        router = new ReplicaRouter(poolManager);
+        factory = new ConnectionFactory() {
+            @Override
+            public Connection createConnection(DatabaseConfiguration dbConfig) throws DatabaseServiceException {
+                if (dbConfig.getDatabaseHost().startsWith("down")) {
+                    throw new DatabaseServiceException(true, "08001", 0, "Connection refused");
+                }
+                Connection conn = Mockito.mock(Connection.class);
+                try {
+                    when(conn.isValid(Mockito.anyInt())).thenReturn(true);
+                    when(conn.getAutoCommit()).thenReturn(true);
+                } catch (SQLException e) {
+                    throw new DatabaseServiceException(e.getMessage());
+                }
+                return conn;
+            }
+
+            @Override
+            public long getReplicationLag(Connection connection) throws SQLException {
+                // the borrowed connection names its pool, and so its host
+                Long lag = lags.get(connection.toString().contains("replica-a") ? "replica-a" : "replica-b");
+                return lag == null ? 0 : lag;
+            }
+        };
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        poolManager.shutdown();
+    }
+
+    @Test
+    public void testForReplica() {
+        DatabaseConfiguration replica = ReplicaRouter.forReplica(testDbConfig, "replica-b:5433");
+        Assert.assertEquals(replica.getDatabaseHost(), "replica-b");
+        Assert.assertEquals(replica.getDatabasePort(), 5433);
+        Assert.assertTrue(replica.getReplicaHosts().isEmpty());
+
+        replica = ReplicaRouter.forReplica(testDbConfig, "replica-a");
+        Assert.assertEquals(replica.getDatabaseHost(), "replica-a");
+        Assert.assertEquals(replica.getDatabasePort(), 5432);
+    }
+
+    @Test(expectedExceptions = DatabaseServiceException.class)
+    public void testReplicasAreRejectedForJdbcUrl() throws Exception {
+        testDbConfig.setJdbcUrl("jdbc:postgresql://primary:5432/testdb");
+        router.getConnection(testDbConfig, factory, null);
+    }
+
+    @Test
+    public void testSpreadsLoadOverReplicas() throws Exception {
+        Connection first = router.getConnection(testDbConfig, factory, null);
+        Connection second = router.getConnection(testDbConfig, factory, null);
+
+        Assert.assertEquals(poolManager.getActiveCount("replica-a:5432"), 1);
+        Assert.assertEquals(poolManager.getActiveCount("replica-b:5433"), 1);
+        Assert.assertEquals(poolManager.getActiveCount("primary:5432"), 0);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testSkipsUnavailableReplicas() throws Exception {
+        testDbConfig.setReplicaHosts(Arrays.asList("down-1", "down-2"));
+
+        Connection conn = router.getConnection(testDbConfig, factory, null);
+        Assert.assertEquals(poolManager.getActiveCount("primary:5432"), 1);
+        conn.close();
+    }
+
+    @Test
+    public void testSkipsUnavailableReplicasForTheRetryInterval() throws Exception {
+        testDbConfig.setReplicaHosts(Arrays.asList("down-1", "replica-a"));
+
+        router.getConnection(testDbConfig, factory, null).close();
+        Assert.assertEquals(router.candidates(testDbConfig).size(), 1);
+    }
+
+    @Test
+    public void testBusyReplicaIsPassedOverButNotShunned() throws Exception {
+        testDbConfig.setReplicaHosts(Arrays.asList("replica-a"));
+        DatabaseConfiguration replica = ReplicaRouter.forReplica(testDbConfig, "replica-a");
+        List<Connection> busy = new ArrayList<Connection>();
+        int maxSize = poolManager.getPool(replica, factory).getMaxSize();
+        for (int i = 0; i < maxSize; i++) {
+            busy.add(poolManager.getConnection(replica, factory, null));
+        }
+
+        long start = System.currentTimeMillis();
+        Connection conn = router.getConnection(testDbConfig, factory, null);
+        // the replica wait, far below the pool's borrow timeout
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(poolManager.getActiveCount("primary:5432"), 1);
+        Assert.assertEquals(router.candidates(testDbConfig).size(), 1);
+
+        conn.close();
+        for (Connection c : busy) {
+            c.close();
+        }
+    }
+
+    @Test
+    public void testSkipsLaggingReplicas() throws Exception {
+        testDbConfig.setMaxReplicaLag(10);
+        lags.put("replica-a", 120L);
+
+        for (int i = 0; i < 3; i++) {
+            router.getConnection(testDbConfig, factory, null).close();
+        }
+        Connection conn = router.getConnection(testDbConfig, factory, null);
+        Assert.assertEquals(poolManager.getActiveCount("replica-a:5432"), 0);
+        Assert.assertEquals(poolManager.getActiveCount("replica-b:5433"), 1);
+        conn.close();
+    }
+
+}
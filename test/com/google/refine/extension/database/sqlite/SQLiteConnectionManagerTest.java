@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017, Tony Opara
+ *        All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ * - Redistributions of source code must retain the above copyright notice, this 
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, 
+ *   this list of conditions and the following disclaimer in the documentation 
+ *   and/or other materials provided with the distribution.
+ * 
+ * Neither the name of Google nor the names of its contributors may be used to 
+ * endorse or promote products derived from this software without specific 
+ * prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR 
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; 
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.google.refine.extension.database.sqlite;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.refine.extension.database.DatabaseServiceException;
+
+
+public class SQLiteConnectionManagerTest {
+
+    @Test
+    public void testFilesStayInsideTheBaseDirectory() throws Exception {
+        File baseDir = Files.createTempDirectory("sqlite-base").toFile().getCanonicalFile();
+        try {
+            Assert.assertEquals(SQLiteConnectionManager.resolveDatabaseFile("sales.db", baseDir),
+                    new File(baseDir, "sales.db"));
+            Assert.assertEquals(SQLiteConnectionManager.resolveDatabaseFile(
+                    new File(baseDir, "2018/sales.db").getPath(), baseDir), new File(baseDir, "2018/sales.db"));
+
+            for (String name : new String[] { "../secret.db", "2018/../../secret.db",
+                    new File(baseDir.getParentFile(), "secret.db").getPath(), baseDir.getPath() + "2/sales.db" }) {
+                try {
+                    SQLiteConnectionManager.resolveDatabaseFile(name, baseDir);
+                    Assert.fail("expected DatabaseServiceException for " + name);
+                } catch (DatabaseServiceException e) {
+                    Assert.assertTrue(e.getMessage().contains("outside"));
+                }
+            }
+        } finally {
+            baseDir.delete();
+        }
+    }
+
+    @Test
+    public void testUrlNamesTheResolvedFile() throws Exception {
+        File baseDir = Files.createTempDirectory("sqlite-base").toFile().getCanonicalFile();
+        try {
+            String url = "jdbc:sqlite:" + new File(baseDir, "sales.db").getPath();
+            Assert.assertEquals(SQLiteConnectionManager.getDatabaseUrl("sales.db", baseDir), url);
+            Assert.assertEquals(SQLiteConnectionManager.getDatabaseUrl("./2018/../sales.db", baseDir), url);
+        } finally {
+            baseDir.delete();
+        }
+    }
+
+}